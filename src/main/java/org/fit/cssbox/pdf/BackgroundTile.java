@@ -0,0 +1,218 @@
+/*
+ * BackgroundTile.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 19. 10. 2026, 17:21:08 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDPatternContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
+import org.apache.pdfbox.pdmodel.graphics.color.PDPattern;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.graphics.pattern.PDTilingPattern;
+import org.fit.cssbox.layout.Rectangle;
+
+/**
+ * The placement of a single background image on a page. The painted area is the clipped
+ * background area restricted to a single tile in the directions where the image is not
+ * repeated. The repeated images are painted using a tiling pattern whose phase is given
+ * by the position of the tile. All the coordinates are in the PDF page space.
+ *
+ * @author burgetr
+ */
+public class BackgroundTile
+{
+    private final float areaX, areaY, areaWidth, areaHeight;
+    private final float tileX, tileY, tileWidth, tileHeight;
+    private final boolean repeated;
+
+    private BackgroundTile(float areaX, float areaY, float areaWidth, float areaHeight,
+            float tileX, float tileY, float tileWidth, float tileHeight, boolean repeated)
+    {
+        this.areaX = areaX;
+        this.areaY = areaY;
+        this.areaWidth = areaWidth;
+        this.areaHeight = areaHeight;
+        this.tileX = tileX;
+        this.tileY = tileY;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.repeated = repeated;
+    }
+
+    /**
+     * Computes the placement of a background image on a page.
+     * @param bounds the background bounds in the document coordinates
+     * @param clipped the visible part of the background relative to the bounds
+     * @param pos the position of the image tile relative to the bounds
+     * @param repeatX is the image repeated horizontally?
+     * @param repeatY is the image repeated vertically?
+     * @param resCoef the ratio of the page width and the document width
+     * @param pageHeight the page height
+     * @param shift the vertical shift of the background on the page (the page break
+     * offsets minus the position of the page top)
+     * @param extraHeight the height added to the vertically repeated backgrounds
+     * @return the placement or {@code null} when nothing is painted
+     */
+    public static BackgroundTile create(Rectangle bounds, Rectangle clipped, Rectangle pos,
+            boolean repeatX, boolean repeatY, float resCoef, float pageHeight, float shift, float extraHeight)
+    {
+        // the painted area relative to the background bounds
+        float x1 = clipped.x;
+        float x2 = clipped.x + clipped.width;
+        float y1 = clipped.y;
+        float y2 = clipped.y + clipped.height;
+        if (!repeatX)
+        {
+            x1 = Math.max(x1, pos.x);
+            x2 = Math.min(x2, pos.x + pos.width);
+        }
+        if (!repeatY)
+        {
+            y1 = Math.max(y1, pos.y);
+            y2 = Math.min(y2, pos.y + pos.height);
+        }
+        if (x2 <= x1 || y2 <= y1)
+            return null;
+
+        // transforms the coordinates to the page
+        final float areaX = (bounds.x + x1) * resCoef;
+        final float areaW = (x2 - x1) * resCoef;
+        final float areaH = (y2 - y1) * resCoef + (repeatY ? extraHeight : 0);
+        final float areaY = pageHeight - ((bounds.y + y1) * resCoef + shift) - areaH;
+        final float tileW = pos.width * resCoef;
+        final float tileH = pos.height * resCoef;
+        final float tileX = (bounds.x + pos.x) * resCoef;
+        final float tileY = pageHeight - ((bounds.y + pos.y) * resCoef + shift) - tileH;
+        return new BackgroundTile(areaX, areaY, areaW, areaH, tileX, tileY, tileW, tileH, repeatX || repeatY);
+    }
+
+    public float getAreaX()
+    {
+        return areaX;
+    }
+
+    public float getAreaY()
+    {
+        return areaY;
+    }
+
+    public float getAreaWidth()
+    {
+        return areaWidth;
+    }
+
+    public float getAreaHeight()
+    {
+        return areaHeight;
+    }
+
+    public float getTileWidth()
+    {
+        return tileWidth;
+    }
+
+    public float getTileHeight()
+    {
+        return tileHeight;
+    }
+
+    /**
+     * Is the image painted using a tiling pattern?
+     */
+    public boolean isRepeated()
+    {
+        return repeated;
+    }
+
+    /**
+     * Returns the horizontal phase of the tile grid, i.e. the position of the tile
+     * modulo the tile width.
+     */
+    public float getPhaseX()
+    {
+        return tileX - (float) Math.floor(tileX / tileWidth) * tileWidth;
+    }
+
+    /**
+     * Returns the vertical phase of the tile grid, i.e. the position of the tile
+     * modulo the tile height.
+     */
+    public float getPhaseY()
+    {
+        return tileY - (float) Math.floor(tileY / tileHeight) * tileHeight;
+    }
+
+    /**
+     * Creates the tiling pattern that repeats the image in the tile size and phase.
+     * The pattern may be shared by all the tiles with the same image, size and phase.
+     */
+    public PDTilingPattern createPattern(PDImageXObject ximage) throws IOException
+    {
+        final PDTilingPattern pattern = new PDTilingPattern();
+        pattern.setPaintType(PDTilingPattern.PAINT_COLORED);
+        pattern.setTilingType(PDTilingPattern.TILING_CONSTANT_SPACING);
+        pattern.setBBox(new PDRectangle(tileWidth, tileHeight));
+        pattern.setXStep(tileWidth);
+        pattern.setYStep(tileHeight);
+        pattern.setMatrix(AffineTransform.getTranslateInstance(getPhaseX(), getPhaseY()));
+        pattern.setResources(new PDResources());
+        try (PDPatternContentStream tileContent = new PDPatternContentStream(pattern))
+        {
+            tileContent.drawImage(ximage, 0, 0, tileWidth, tileHeight);
+        }
+        return pattern;
+    }
+
+    /**
+     * Paints the image to a page content stream.
+     * @param content the page content stream
+     * @param resources the page resources
+     * @param ximage the tile image
+     * @param pattern the tiling pattern for the repeated images, not used otherwise
+     * @throws IOException
+     */
+    public void draw(PDPageContentStream content, PDResources resources, PDImageXObject ximage,
+            PDTilingPattern pattern) throws IOException
+    {
+        content.saveGraphicsState();
+        if (!repeated)
+        {
+            content.addRect(areaX, areaY, areaWidth, areaHeight);
+            content.clip();
+            content.drawImage(ximage, tileX, tileY, tileWidth, tileHeight);
+        }
+        else
+        {
+            // the painted area never exceeds a single tile in the non-repeated direction
+            final COSName name = resources.add(pattern);
+            content.setNonStrokingColor(new PDColor(name, new PDPattern(null)));
+            content.addRect(areaX, areaY, areaWidth, areaHeight);
+            content.fill();
+        }
+        content.restoreGraphicsState();
+    }
+
+}
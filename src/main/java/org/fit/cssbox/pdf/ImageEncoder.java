@@ -0,0 +1,351 @@
+/*
+ * ImageEncoder.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 18. 10. 2026, 23:41:06 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSInteger;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.filter.Filter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDColorSpace;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+
+/**
+ * A lossless encoder of the images embedded in the document. Before encoding, the image
+ * pixels are analyzed in order to choose the most compact representation: the alpha
+ * channel is omitted when all the pixels are opaque, the grayscale images use the
+ * DeviceGray color space and the images with at most 256 colors use an Indexed color
+ * space with the smallest sufficient number of bits per pixel.
+ *
+ * The image data is encoded independently on the document, so that the images may be
+ * encoded concurrently. The PDF image objects are created from the encoded data afterwards.
+ *
+ * @author burgetr
+ */
+public class ImageEncoder
+{
+    /** Maximal number of colors for the indexed images */
+    private static final int MAX_COLORS = 256;
+
+    private final BufferedImage image;
+    private final int width;
+    private final int height;
+
+    // image properties
+    private boolean opaque;
+    private boolean gray;
+    private int[] palette;
+    private int colorCount;
+    private int[] paletteTable; // open addressing table of (rgb + 1) values
+    private byte[] paletteIndex; // palette indices for the table entries
+
+    /**
+     * Creates a PDF image for the given image.
+     * @param doc the document the image belongs to
+     * @param image the source image
+     * @return the created image
+     * @throws IOException
+     */
+    public static PDImageXObject createFromImage(PDDocument doc, BufferedImage image) throws IOException
+    {
+        return encode(image).createImage(doc);
+    }
+
+    /**
+     * Encodes the image data. The method may be called from any thread.
+     * @param image the source image
+     * @return the encoded image
+     * @throws IOException
+     */
+    public static EncodedImage encode(BufferedImage image) throws IOException
+    {
+        return new ImageEncoder(image).encodeImage();
+    }
+
+    private ImageEncoder(BufferedImage image)
+    {
+        this.image = image;
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+    }
+
+    private EncodedImage encodeImage() throws IOException
+    {
+        analyze();
+        final EncodedImage ret;
+        if (palette != null && (!gray || colorCount <= 16))
+            ret = encodeIndexed();
+        else if (gray)
+            ret = new EncodedImage(encodeGray(), width, height, 8, COSName.DEVICEGRAY);
+        else
+            ret = new EncodedImage(encodeRGB(), width, height, 8, COSName.DEVICERGB);
+        if (!opaque)
+            ret.mask = new EncodedImage(encodeAlpha(), width, height, 8, COSName.DEVICEGRAY);
+        return ret;
+    }
+
+    //================================================================================
+
+    /**
+     * Goes through the image pixels and finds the image properties.
+     */
+    private void analyze()
+    {
+        opaque = !image.getColorModel().hasAlpha();
+        boolean transparent = false;
+        gray = true;
+        palette = new int[MAX_COLORS];
+        paletteTable = new int[MAX_COLORS * 4];
+        paletteIndex = new byte[MAX_COLORS * 4];
+        colorCount = 0;
+        final int[] row = new int[width];
+        for (int y = 0; y < height; y++)
+        {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int x = 0; x < width; x++)
+            {
+                final int argb = row[x];
+                if (!opaque && !transparent && (argb >>> 24) != 0xff)
+                    transparent = true;
+                final int rgb = argb & 0xffffff;
+                if (gray && ((rgb >> 16) != (rgb & 0xff) || ((rgb >> 8) & 0xff) != (rgb & 0xff)))
+                    gray = false;
+                if (palette != null && findColor(rgb) == -1)
+                    addColor(rgb);
+            }
+            if (palette == null && !gray && (opaque || transparent))
+                break; // nothing more to find
+        }
+        if (!opaque && !transparent)
+            opaque = true;
+    }
+
+    /**
+     * Finds the palette index of the given color.
+     * @return the index or -1 when the color is not in the palette
+     */
+    private int findColor(int rgb)
+    {
+        final int mask = paletteTable.length - 1;
+        int pos = hash(rgb) & mask;
+        while (paletteTable[pos] != 0)
+        {
+            if (paletteTable[pos] == rgb + 1)
+                return paletteIndex[pos] & 0xff;
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a new color to the palette. When the palette is full, the palette is discarded.
+     */
+    private void addColor(int rgb)
+    {
+        if (colorCount == MAX_COLORS)
+        {
+            palette = null;
+            paletteTable = null;
+            paletteIndex = null;
+            return;
+        }
+        final int mask = paletteTable.length - 1;
+        int pos = hash(rgb) & mask;
+        while (paletteTable[pos] != 0)
+            pos = (pos + 1) & mask;
+        paletteTable[pos] = rgb + 1;
+        paletteIndex[pos] = (byte) colorCount;
+        palette[colorCount++] = rgb;
+    }
+
+    private static int hash(int rgb)
+    {
+        final int h = rgb * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    //================================================================================
+
+    private EncodedImage encodeIndexed() throws IOException
+    {
+        final int bpc = colorCount <= 2 ? 1 : (colorCount <= 4 ? 2 : (colorCount <= 16 ? 4 : 8));
+        final int pixelsPerByte = 8 / bpc;
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream out = createDeflater(bos))
+        {
+            final int[] row = new int[width];
+            final byte[] data = new byte[(width + pixelsPerByte - 1) / pixelsPerByte];
+            for (int y = 0; y < height; y++)
+            {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                Arrays.fill(data, (byte) 0);
+                for (int x = 0; x < width; x++)
+                {
+                    final int index = findColor(row[x] & 0xffffff);
+                    final int shift = 8 - bpc * (x % pixelsPerByte + 1);
+                    data[x / pixelsPerByte] |= index << shift;
+                }
+                out.write(data);
+            }
+        }
+
+        final byte[] lookup = new byte[colorCount * 3];
+        for (int i = 0; i < colorCount; i++)
+        {
+            lookup[i * 3] = (byte) (palette[i] >> 16);
+            lookup[i * 3 + 1] = (byte) (palette[i] >> 8);
+            lookup[i * 3 + 2] = (byte) palette[i];
+        }
+        final COSArray cs = new COSArray();
+        cs.add(COSName.INDEXED);
+        cs.add(COSName.DEVICERGB);
+        cs.add(COSInteger.get(colorCount - 1));
+        cs.add(new COSString(lookup));
+        return new EncodedImage(bos.toByteArray(), width, height, bpc, cs);
+    }
+
+    private byte[] encodeGray() throws IOException
+    {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream out = createDeflater(bos))
+        {
+            final int[] row = new int[width];
+            final byte[] data = new byte[width];
+            for (int y = 0; y < height; y++)
+            {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; x++)
+                    data[x] = (byte) row[x];
+                out.write(data);
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private byte[] encodeRGB() throws IOException
+    {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream out = createDeflater(bos))
+        {
+            final int[] row = new int[width];
+            final byte[] data = new byte[width * 3];
+            for (int y = 0; y < height; y++)
+            {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0, i = 0; x < width; x++)
+                {
+                    final int rgb = row[x];
+                    data[i++] = (byte) (rgb >> 16);
+                    data[i++] = (byte) (rgb >> 8);
+                    data[i++] = (byte) rgb;
+                }
+                out.write(data);
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private byte[] encodeAlpha() throws IOException
+    {
+        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (OutputStream out = createDeflater(bos))
+        {
+            final int[] row = new int[width];
+            final byte[] data = new byte[width];
+            for (int y = 0; y < height; y++)
+            {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int x = 0; x < width; x++)
+                    data[x] = (byte) (row[x] >>> 24);
+                out.write(data);
+            }
+        }
+        return bos.toByteArray();
+    }
+
+    private static OutputStream createDeflater(OutputStream out)
+    {
+        final Deflater deflater = new Deflater(Filter.getCompressionLevel());
+        return new DeflaterOutputStream(out, deflater, 32768) {
+            @Override
+            public void close() throws IOException
+            {
+                try
+                {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+    //================================================================================
+
+    /**
+     * The Flate encoded image data together with the image parameters.
+     */
+    public static class EncodedImage
+    {
+        private final byte[] data;
+        private final int width;
+        private final int height;
+        private final int bpc;
+        private final COSBase colorSpace;
+        private EncodedImage mask;
+
+        private EncodedImage(byte[] data, int width, int height, int bpc, COSBase colorSpace)
+        {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            this.bpc = bpc;
+            this.colorSpace = colorSpace;
+        }
+
+        /**
+         * Creates the PDF image object for the encoded data.
+         * @param doc the document the image belongs to
+         * @return the created image
+         * @throws IOException
+         */
+        public PDImageXObject createImage(PDDocument doc) throws IOException
+        {
+            final PDImageXObject ret = new PDImageXObject(doc, new ByteArrayInputStream(data), COSName.FLATE_DECODE,
+                    width, height, bpc, PDColorSpace.create(colorSpace));
+            if (mask != null)
+                ret.getCOSObject().setItem(COSName.SMASK, mask.createImage(doc));
+            return ret;
+        }
+    }
+
+}
@@ -0,0 +1,235 @@
+/*
+ * IntervalTable.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 18. 10. 2026, 11:40:15 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import java.util.Arrays;
+
+/**
+ * A table of intervals used for representing the page break and page break avoid
+ * records. Each record consists of the interval start, the interval end and the
+ * break position. The records are kept sorted by the interval start in primitive
+ * arrays. Moving all the records is applied lazily using a common offset.
+ *
+ * @author burgetr
+ */
+public class IntervalTable
+{
+    private float[] start;
+    private float[] end;
+    private float[] brk;
+    private int first; // index of the first valid record
+    private int last; // index after the last valid record
+    private float offset; // common offset of all the records
+
+    public IntervalTable()
+    {
+        start = new float[8];
+        end = new float[8];
+        brk = new float[8];
+        first = 0;
+        last = 0;
+        offset = 0;
+    }
+
+    /**
+     * Returns the number of records in the table.
+     */
+    public int size()
+    {
+        return last - first;
+    }
+
+    /**
+     * Returns the interval start of the i-th record.
+     */
+    public float getStart(int i)
+    {
+        return start[first + i] + offset;
+    }
+
+    /**
+     * Returns the interval end of the i-th record.
+     */
+    public float getEnd(int i)
+    {
+        return end[first + i] + offset;
+    }
+
+    /**
+     * Returns the break position of the i-th record.
+     */
+    public float getBreak(int i)
+    {
+        return brk[first + i] + offset;
+    }
+
+    /**
+     * Inserts a new record while keeping the records sorted by the interval start.
+     * The new record is placed after all the records with the same start.
+     */
+    public void insert(float recStart, float recEnd, float recBreak)
+    {
+        ensureCapacity(last + 1);
+        final float s = recStart - offset;
+        // find the position by binary search
+        int lo = first;
+        int hi = last;
+        while (lo < hi)
+        {
+            final int mid = (lo + hi) >>> 1;
+            if (start[mid] <= s)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        final int n = last - lo;
+        if (n > 0)
+        {
+            System.arraycopy(start, lo, start, lo + 1, n);
+            System.arraycopy(end, lo, end, lo + 1, n);
+            System.arraycopy(brk, lo, brk, lo + 1, n);
+        }
+        start[lo] = s;
+        end[lo] = recEnd - offset;
+        brk[lo] = recBreak - offset;
+        last++;
+    }
+
+    /**
+     * Removes the first record.
+     */
+    public void removeFirst()
+    {
+        if (first < last)
+            first++;
+    }
+
+    /**
+     * Moves all the records by the given distance.
+     */
+    public void moveBy(float moveBy)
+    {
+        offset += moveBy;
+    }
+
+    /**
+     * Removes all the records whose interval is longer than the given length.
+     */
+    public void removeLongerThan(float length)
+    {
+        int dst = first;
+        for (int src = first; src < last; src++)
+        {
+            if (end[src] - start[src] <= length)
+                copyRecord(src, dst++);
+        }
+        last = dst;
+    }
+
+    /**
+     * Merges the records with overlapping intervals. When the merged interval would be
+     * longer than the given length, the latter record is removed instead. After the
+     * merging, the intervals in the table do not overlap.
+     */
+    public void mergeOverlapping(float length)
+    {
+        if (size() < 2)
+            return;
+        int prev = first;
+        for (int src = first + 1; src < last; src++)
+        {
+            if (end[prev] > start[src])
+            {
+                // merges overlapping records unless the result is too long
+                if (end[src] - start[prev] <= length && end[prev] < end[src])
+                    end[prev] = end[src];
+            }
+            else
+                copyRecord(src, ++prev);
+        }
+        last = prev + 1;
+    }
+
+    /**
+     * Finds a record whose interval contains the given position. The intervals must not
+     * overlap (see {@link #mergeOverlapping(float)}).
+     * @param pos the position to find
+     * @param from the index of the record to start with
+     * @return the record index or -1 when no such record exists
+     */
+    public int findContaining(float pos, int from)
+    {
+        final float p = pos - offset;
+        // find the last record that starts before pos
+        int lo = first + from;
+        int hi = last;
+        while (lo < hi)
+        {
+            final int mid = (lo + hi) >>> 1;
+            if (start[mid] < p)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        final int ret = lo - 1;
+        if (ret >= first + from && end[ret] > p)
+            return ret - first;
+        else
+            return -1;
+    }
+
+    //=========================================================================
+
+    private void copyRecord(int src, int dst)
+    {
+        if (src != dst)
+        {
+            start[dst] = start[src];
+            end[dst] = end[src];
+            brk[dst] = brk[src];
+        }
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > start.length)
+        {
+            if (first > 0 && capacity - first <= start.length)
+            {
+                // reuse the space of the removed records
+                final int n = last - first;
+                System.arraycopy(start, first, start, 0, n);
+                System.arraycopy(end, first, end, 0, n);
+                System.arraycopy(brk, first, brk, 0, n);
+                first = 0;
+                last = n;
+            }
+            else
+            {
+                final int newCapacity = Math.max(capacity, start.length * 2);
+                start = Arrays.copyOf(start, newCapacity);
+                end = Arrays.copyOf(end, newCapacity);
+                brk = Arrays.copyOf(brk, newCapacity);
+            }
+        }
+    }
+
+}
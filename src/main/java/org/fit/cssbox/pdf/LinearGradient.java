@@ -1,14 +1,21 @@
 
 package org.fit.cssbox.pdf;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.Locale;
 
 import org.apache.pdfbox.cos.COSArray;
 import org.apache.pdfbox.cos.COSBoolean;
 import org.apache.pdfbox.cos.COSDictionary;
 import org.apache.pdfbox.cos.COSFloat;
 import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.common.function.PDFunction;
 import org.apache.pdfbox.pdmodel.common.function.PDFunctionType3;
+import org.apache.pdfbox.pdmodel.common.function.PDFunctionType4;
 import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
 import org.apache.pdfbox.pdmodel.graphics.shading.PDShading;
@@ -33,6 +40,8 @@ public class LinearGradient
 
     public Color[] trueColors;
     public float[] trueColorLen;
+    /** when set, trueColors and trueColorLen contain a single period of a repeating gradient */
+    public boolean repeatPeriod;
 
     /**
      * This method is used for calculating coordinates of starting point and
@@ -226,7 +235,20 @@ public class LinearGradient
             }
             else if (colorLen[colors.length - 2] != 1)
             { // if length 1 is not set in the end
-                if (isRepeating)
+                if (isRepeating && colorLen[colors.length - 2] > colorLen[0])
+                { // if repeating-linear-gradient() is set, only a single period is stored
+                    trueSize = colorstops.size();
+                    trueColors = new Color[trueSize];
+                    trueColorLen = new float[trueSize];
+                    boolean[] trueIsLen = new boolean[trueSize];
+                    System.arraycopy(colors, 0, trueColors, 0, trueSize);
+                    System.arraycopy(colorLen, 0, trueColorLen, 0, trueSize);
+                    System.arraycopy(isLen, 0, trueIsLen, 0, trueSize);
+                    fillMissingLengths(trueColorLen, trueIsLen);
+                    repeatPeriod = true;
+                    return;
+                }
+                else if (isRepeating)
                 { // if repeating-linear-gradient() is set
                     float lastLen = colorLen[colorLen.length - 2]; // last color length
                     repeatTime = (int) (gradLine / ((gradLine / 100) * (lastLen * 100))); // how many time will be repeated
@@ -348,34 +370,43 @@ public class LinearGradient
                     ix++;
                 }
             }
-            int n = 0;
-            int m = 0;
-            // calculating missed color lengths
-            while (n < trueIsLen.length)
-            {
-                while (trueIsLen[n])
-                { // skipping colors with length
-                    n++;
-                    if (n >= trueIsLen.length) break;
-                }
+            fillMissingLengths(trueColorLen, trueIsLen);
+        }
+    }
+
+    /**
+     * Calculates the missing colour lengths by distributing the colours evenly
+     * between the surrounding colours with the length set.
+     */
+    private void fillMissingLengths(float[] trueColorLen, boolean[] trueIsLen)
+    {
+        int n = 0;
+        int m = 0;
+        // calculating missed color lengths
+        while (n < trueIsLen.length)
+        {
+            while (trueIsLen[n])
+            { // skipping colors with length
+                n++;
                 if (n >= trueIsLen.length) break;
-                while ((!trueIsLen[n]) && (n < trueIsLen.length))
-                { // calculating how many colors without lengths
-                    n++;
-                    m++;
-                }
-                if (m != 0)
-                { // when is not end
-                    float gap = trueColorLen[n] - trueColorLen[n - m - 1];
-                    int coef = 1;
-                    for (int o = n - m; o < n; o++)
-                    {
-                        trueColorLen[o] = trueColorLen[n - m - 1] + ((gap / (m + 1)) * coef);
-                        coef++;
-                    }
+            }
+            if (n >= trueIsLen.length) break;
+            while ((!trueIsLen[n]) && (n < trueIsLen.length))
+            { // calculating how many colors without lengths
+                n++;
+                m++;
+            }
+            if (m != 0)
+            { // when is not end
+                float gap = trueColorLen[n] - trueColorLen[n - m - 1];
+                int coef = 1;
+                for (int o = n - m; o < n; o++)
+                {
+                    trueColorLen[o] = trueColorLen[n - m - 1] + ((gap / (m + 1)) * coef);
+                    coef++;
                 }
-                m = 0;
             }
+            m = 0;
         }
     }
 
@@ -408,12 +439,16 @@ public class LinearGradient
         coords.add(new COSFloat((float) endy));
         shading.setCoords(coords);
 
-        PDFunctionType3 type3 = buildType3Function(trueColors, trueColorLen);
+        PDFunction function;
+        if (repeatPeriod)
+            function = buildRepeatingFunction(trueColors, trueColorLen);
+        else
+            function = buildType3Function(trueColors, trueColorLen);
 
         COSArray extend = new COSArray();
         extend.add(COSBoolean.TRUE);
         extend.add(COSBoolean.TRUE);
-        shading.setFunction(type3);
+        shading.setFunction(function);
         shading.setExtend(extend);
         return shading;
     }
@@ -457,6 +492,99 @@ public class LinearGradient
         return type3;
     }
 
+    /**
+     * Creates a PostScript calculator function that repeats a single gradient period
+     * along the whole gradient line. The size of the function does not depend on the
+     * number of repetitions.
+     * 
+     * @return the function for the linear gradient
+     * @param colors
+     *            colours of a single period
+     * @param fractions
+     *            lengths of the colours in the gradient line; the first and the last
+     *            length give the start and the end of the period
+     */
+    private PDFunctionType4 buildRepeatingFunction(Color[] colors, float[] fractions)
+    {
+        final float start = fractions[0];
+        final float period = fractions[fractions.length - 1] - start;
+        final float[][] rgb = new float[colors.length][];
+        for (int i = 0; i < colors.length; i++)
+            rgb[i] = blendWithWhite(colors[i]);
+
+        // position within the period in [0, 1)
+        StringBuilder prog = new StringBuilder();
+        prog.append("{ ").append(num(start)).append(" sub ").append(num(period)).append(" div dup floor sub ");
+        // nested conditions choosing the interval between the neighbouring colours
+        for (int i = 1; i < colors.length; i++)
+        {
+            final float from = (fractions[i - 1] - start) / period;
+            final float to = (fractions[i] - start) / period;
+            prog.append("dup ").append(num(to)).append(" le { ");
+            if (to > from)
+            {
+                // interpolates the colour components
+                prog.append(num(from)).append(" sub ").append(num(to - from)).append(" div ");
+                prog.append("dup ").append(num(rgb[i][0] - rgb[i - 1][0])).append(" mul ").append(num(rgb[i - 1][0])).append(" add exch ");
+                prog.append("dup ").append(num(rgb[i][1] - rgb[i - 1][1])).append(" mul ").append(num(rgb[i - 1][1])).append(" add exch ");
+                prog.append(num(rgb[i][2] - rgb[i - 1][2])).append(" mul ").append(num(rgb[i - 1][2])).append(" add ");
+            }
+            else
+                prog.append("pop ").append(num(rgb[i][0])).append(' ').append(num(rgb[i][1])).append(' ').append(num(rgb[i][2])).append(' ');
+            prog.append("} { ");
+        }
+        final float[] last = rgb[colors.length - 1];
+        prog.append("pop ").append(num(last[0])).append(' ').append(num(last[1])).append(' ').append(num(last[2])).append(' ');
+        for (int i = 1; i < colors.length; i++)
+            prog.append("} ifelse ");
+        prog.append('}');
+
+        COSStream function = new COSStream();
+        function.setInt(COSName.FUNCTION_TYPE, 4);
+        COSArray domain = new COSArray();
+        domain.add(new COSFloat(0));
+        domain.add(new COSFloat(1));
+        function.setItem(COSName.DOMAIN, domain);
+        COSArray range = new COSArray();
+        for (int i = 0; i < 3; i++)
+        {
+            range.add(new COSFloat(0));
+            range.add(new COSFloat(1));
+        }
+        function.setItem(COSName.RANGE, range);
+        try
+        {
+            try (OutputStream out = function.createOutputStream())
+            {
+                out.write(prog.toString().getBytes(StandardCharsets.US_ASCII));
+            }
+            return new PDFunctionType4(function);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Converts a colour to RGB components in the range 0..1 while applying its
+     * transparency against a white background.
+     */
+    private static float[] blendWithWhite(Color color)
+    {
+        float alpha = color.getAlpha() / 255f;
+        float r = color.getRed() * alpha + (1 - alpha) * 255;
+        float g = color.getGreen() * alpha + (1 - alpha) * 255;
+        float b = color.getBlue() * alpha + (1 - alpha) * 255;
+        return new float[] { r / 255f, g / 255f, b / 255f };
+    }
+
+    /**
+     * Formats a number for the PostScript calculator function.
+     */
+    private static String num(float value)
+    {
+        return String.format(Locale.US, "%.5f", value);
+    }
+
     /**
      * This method is used for setting colours to linear gradient.
      * 
@@ -20,9 +20,24 @@
 
 package org.fit.cssbox.pdf;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.filter.Filter;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
@@ -41,9 +56,26 @@ import org.w3c.dom.Element;
  */
 public class PDFEngine extends Engine
 {
+    /** Maximal number of kids of a page tree node */
+    static final int PAGE_TREE_FANOUT = 32;
+
     private PDDocument doc;
     private PDPage page;
     private PDRectangle pageFormat;
+    private int firstPage = 0;
+    private int lastPage = Integer.MAX_VALUE;
+    private float imageResolution = 0;
+    private int imageThreads = Runtime.getRuntime().availableProcessors();
+    private int compressionLevel = Filter.getCompressionLevel();
+    private int compressionThreads = Runtime.getRuntime().availableProcessors();
+    private boolean deferredCompression = true;
+    private boolean compressionPending = false;
+    private boolean sharedResources = false;
+    private boolean linkPerLine = false;
+    private ExecutorService executor = null;
+
+    // the pool of threads shared by the engines that have no executor set
+    private static ExecutorService sharedExecutor = null;
     
 
     public PDFEngine(String pageFormat, Element root, DOMAnalyzer decoder, Dimension dim, URL baseurl)
@@ -58,8 +90,15 @@ public class PDFEngine extends Engine
         initDocument(pageFormat);
     }
 
+    /**
+     * Returns the resulting document. The page contents written uncompressed by the deferred
+     * compression (see {@link #setDeferredCompression(boolean)}) are compressed by
+     * {@link #compressContent()} before the document is returned, so that the document
+     * may be saved by the caller.
+     */
     public PDDocument getDocument()
     {
+        compressContent();
         return doc;
     }
 
@@ -73,10 +112,178 @@ public class PDFEngine extends Engine
         return pageFormat;
     }
 
+    /**
+     * Restricts the resulting document to the given range of pages. The document
+     * is paged from its beginning but only the nodes visible on the given pages
+     * are drawn. By default, all the pages are rendered.
+     * @param firstPage the index of the first page to be rendered (starting with 0)
+     * @param lastPage the index of the last page to be rendered (inclusive)
+     * @throws IllegalArgumentException when the first page is negative or the last page
+     * precedes the first one. When the first page is beyond the end of the document,
+     * the exception is thrown when the document is rendered.
+     */
+    public void setPageRange(int firstPage, int lastPage)
+    {
+        if (firstPage < 0 || lastPage < firstPage)
+            throw new IllegalArgumentException("Invalid page range " + firstPage + " - " + lastPage);
+        this.firstPage = firstPage;
+        this.lastPage = lastPage;
+    }
+
+    /**
+     * Returns the index of the first rendered page.
+     * @return the page index (starting with 0)
+     */
+    public int getFirstPage()
+    {
+        return firstPage;
+    }
+
+    /**
+     * Returns the index of the last rendered page. The range may exceed the actual
+     * number of pages of the document.
+     * @return the page index (inclusive) or {@code Integer.MAX_VALUE} when the range is not limited
+     */
+    public int getLastPage()
+    {
+        return lastPage;
+    }
+
+    /**
+     * Sets the maximal resolution of the images in the resulting document. The images
+     * whose pixel density exceeds this resolution in the resulting size are downsampled
+     * before they are stored. By default, the original images are stored.
+     * @param dpi the resolution in pixels per inch or 0 for keeping the original images
+     */
+    public void setImageResolution(float dpi)
+    {
+        this.imageResolution = dpi;
+    }
+
+    public float getImageResolution()
+    {
+        return imageResolution;
+    }
+
+    /**
+     * Sets whether the images should be encoded concurrently before the pages are drawn.
+     * The images are encoded on the executor set by {@link #setExecutor(ExecutorService)}
+     * or on a pool of threads shared by all the engines, which has a thread for each
+     * available processor. By default, the number of the available processors is used.
+     * @param threads more than 1 for encoding the images concurrently; 1 or less for
+     * encoding the images while drawing
+     */
+    public void setImageThreads(int threads)
+    {
+        this.imageThreads = threads;
+    }
+
+    public int getImageThreads()
+    {
+        return imageThreads;
+    }
+
+    /**
+     * Sets the compression level used for the page contents compressed by
+     * {@link #compressContent()}. By default, the PDFBox compression level is used.
+     * @param level the compression level from 0 to 9 (see {@link java.util.zip.Deflater});
+     * 1 for the fastest compression
+     */
+    public void setCompressionLevel(int level)
+    {
+        this.compressionLevel = level;
+    }
+
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+
+    /**
+     * Sets whether the page contents should be compressed concurrently in
+     * {@link #compressContent()}. The contents are compressed on the executor set by
+     * {@link #setExecutor(ExecutorService)} or on the pool of threads shared by all
+     * the engines. By default, the number of the available processors is used.
+     * @param threads more than 1 for compressing concurrently; 1 or less for compressing
+     * in the calling thread
+     */
+    public void setCompressionThreads(int threads)
+    {
+        this.compressionThreads = threads;
+    }
+
+    public int getCompressionThreads()
+    {
+        return compressionThreads;
+    }
+
+    /**
+     * Sets whether the page contents should be written uncompressed while rendering and
+     * compressed concurrently by {@link #compressContent()} when the document is saved
+     * or obtained by {@link #getDocument()}. When disabled, the page contents are compressed
+     * while they are written. The deferred compression is enabled by default.
+     */
+    public void setDeferredCompression(boolean deferredCompression)
+    {
+        this.deferredCompression = deferredCompression;
+    }
+
+    public boolean isDeferredCompression()
+    {
+        return deferredCompression;
+    }
+
+    /**
+     * Sets whether all the pages should reference a single document-level resources
+     * dictionary instead of having their own resources. This reduces the number of objects
+     * and the size of long documents. By default, each page has its own resources.
+     */
+    public void setSharedResources(boolean sharedResources)
+    {
+        this.sharedResources = sharedResources;
+    }
+
+    public boolean isSharedResources()
+    {
+        return sharedResources;
+    }
+
+    /**
+     * Sets whether a separate link annotation should be created for each line of a link
+     * instead of a single annotation per link and page whose QuadPoints give the individual
+     * link boxes. This may be used for the PDF viewers that ignore the QuadPoints.
+     * By default, a single annotation is created.
+     */
+    public void setLinkPerLine(boolean linkPerLine)
+    {
+        this.linkPerLine = linkPerLine;
+    }
+
+    public boolean isLinkPerLine()
+    {
+        return linkPerLine;
+    }
+
+    /**
+     * Sets a shared executor used for encoding the images and compressing the page contents.
+     * When set, the numbers of threads are ignored. The executor is not shut down by the engine.
+     * By default, a pool of threads shared by all the engines is used.
+     * @param executor the executor or {@code null} for using the shared pool
+     */
+    public void setExecutor(ExecutorService executor)
+    {
+        this.executor = executor;
+    }
+
+    public ExecutorService getExecutor()
+    {
+        return executor;
+    }
+
     @Override
     protected VisualContext createVisualContext(BrowserConfig config, FontTable fontTable)
     {
-        return new PDFVisualContext(getDocument(), null, config, fontTable);
+        return new PDFVisualContext(doc, null, config, fontTable);
     }
 
     @Override
@@ -85,7 +292,18 @@ public class PDFEngine extends Engine
         //obtain the viewport bounds depending on whether we are clipping to viewport size or using the whole page
         float w = getViewport().getClippedContentBounds().width;
         float h = getViewport().getClippedContentBounds().height;
-        return new PDFRenderer(w, h, doc);
+        PDFRenderer renderer = new PDFRenderer(w, h, doc);
+        renderer.setPageRange(firstPage, lastPage);
+        renderer.setImageResolution(imageResolution);
+        if (executor != null)
+            renderer.setExecutor(executor);
+        else if (imageThreads > 1)
+            renderer.setExecutor(getSharedExecutor());
+        renderer.setCompressContent(!deferredCompression); //otherwise compressed in compressContent()
+        compressionPending = deferredCompression;
+        renderer.setSharedResources(sharedResources);
+        renderer.setLinkPerLine(linkPerLine);
+        return renderer;
     }
 
     //========================================================================================
@@ -104,18 +322,134 @@ public class PDFEngine extends Engine
     }
 
     /**
-     * Saves the PDF document to the given output stream.
+     * Returns the pool of daemon threads shared by all the engines that have no executor
+     * set. The pool is created when it is used for the first time.
+     */
+    protected static synchronized ExecutorService getSharedExecutor()
+    {
+        if (sharedExecutor == null)
+        {
+            sharedExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                Thread thread = new Thread(r, "PDFEngine worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return sharedExecutor;
+    }
+
+    /**
+     * Creates the compressor of the page contents according to the settings.
+     */
+    protected StreamCompressor createStreamCompressor()
+    {
+        if (executor != null)
+            return new StreamCompressor(compressionLevel, executor);
+        else if (compressionThreads > 1)
+            return new StreamCompressor(compressionLevel, getSharedExecutor());
+        else
+            return new StreamCompressor(compressionLevel, 1);
+    }
+
+    /**
+     * Compresses the page contents written uncompressed by the deferred compression using
+     * the configured compression level and threads. It is called by all the {@code saveDocument}
+     * methods and by {@link #getDocument()}. The document is only scanned for the uncompressed
+     * streams once after the rendering; nothing is done when the deferred compression is
+     * disabled or the contents have been compressed already.
+     */
+    public void compressContent()
+    {
+        if (compressionPending)
+        {
+            try
+            {
+                createStreamCompressor().compress(doc);
+                compressionPending = false;
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Saves the PDF document to the given output stream. The remaining page contents are
+     * compressed and the page tree is balanced before the document is written.
      */
     public void saveDocument(OutputStream out)
     {
         try
         {
+            compressContent();
+            balancePageTree();
             doc.save(out);
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Saves the PDF document to the given file. The file is created or overwritten.
+     */
+    public void saveDocument(Path file)
+    {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            saveDocument(channel);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Saves the PDF document to the given channel. The data is written in large blocks
+     * using a direct buffer. The channel is not closed.
+     */
+    public void saveDocument(WritableByteChannel channel)
+    {
+        final ChannelOutputStream out = new ChannelOutputStream(channel);
+        saveDocument(out);
+        try
+        {
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Saves the PDF document to a temporary file and returns its contents as a read-only
+     * buffer mapped to the memory. The document data is not kept on the Java heap; the
+     * temporary file is removed when possible. The document size is limited to 2 GB.
+     * @return the buffer containing the PDF document data
+     */
+    public ByteBuffer saveDocumentMapped()
+    {
+        try
+        {
+            final Path file = Files.createTempFile("cssbox", ".pdf");
+            try
+            {
+                saveDocument(file);
+                try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+                {
+                    return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            } finally {
+                // the mapping remains valid after the file is deleted on most systems
+                try
+                {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    file.toFile().deleteOnExit();
+                }
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Closes the document.
      */
@@ -130,6 +464,67 @@ public class PDFEngine extends Engine
     }
 
 
+    /**
+     * Rebuilds the page tree as a balanced tree where each node has at most
+     * {@link #PAGE_TREE_FANOUT} kids. The pages are added to a flat page tree
+     * while rendering.
+     */
+    protected void balancePageTree()
+    {
+        balancePageTree(doc);
+    }
+
+    /**
+     * Rebuilds the page tree of the given document as a balanced tree.
+     * @param doc the document whose page tree should be rebuilt
+     */
+    static void balancePageTree(PDDocument doc)
+    {
+        final COSDictionary root = doc.getDocumentCatalog().getPages().getCOSObject();
+        List<COSDictionary> level = new ArrayList<>(doc.getNumberOfPages());
+        List<Integer> counts = new ArrayList<>(doc.getNumberOfPages());
+        for (PDPage p : doc.getPages())
+        {
+            level.add(p.getCOSObject());
+            counts.add(1);
+        }
+        if (level.size() <= PAGE_TREE_FANOUT)
+            return;
+        // creates the intermediate nodes level by level
+        while (level.size() > PAGE_TREE_FANOUT)
+        {
+            final List<COSDictionary> nextLevel = new ArrayList<>(level.size() / PAGE_TREE_FANOUT + 1);
+            final List<Integer> nextCounts = new ArrayList<>(level.size() / PAGE_TREE_FANOUT + 1);
+            for (int i = 0; i < level.size(); i += PAGE_TREE_FANOUT)
+            {
+                final COSDictionary node = new COSDictionary();
+                node.setItem(COSName.TYPE, COSName.PAGES);
+                final COSArray kids = new COSArray();
+                int count = 0;
+                for (int j = i; j < Math.min(i + PAGE_TREE_FANOUT, level.size()); j++)
+                {
+                    final COSDictionary kid = level.get(j);
+                    kid.setItem(COSName.PARENT, node);
+                    kids.add(kid);
+                    count += counts.get(j);
+                }
+                node.setItem(COSName.KIDS, kids);
+                node.setInt(COSName.COUNT, count);
+                nextLevel.add(node);
+                nextCounts.add(count);
+            }
+            level = nextLevel;
+            counts = nextCounts;
+        }
+        final COSArray kids = new COSArray();
+        for (COSDictionary kid : level)
+        {
+            kid.setItem(COSName.PARENT, root);
+            kids.add(kid);
+        }
+        root.setItem(COSName.KIDS, kids);
+    }
+
     protected PDRectangle decodePageFormat(String format)
     {
         PDRectangle ret;
@@ -165,4 +560,62 @@ public class PDFEngine extends Engine
         }
         return ret;
     }
+
+    //========================================================================================
+
+    /**
+     * An output stream that writes to a channel through a direct buffer. Closing the stream
+     * only flushes the buffer, the channel remains open.
+     */
+    private static class ChannelOutputStream extends OutputStream
+    {
+        private static final int BUFFER_SIZE = 1024 * 1024;
+
+        private final WritableByteChannel channel;
+        private final ByteBuffer buffer;
+
+        public ChannelOutputStream(WritableByteChannel channel)
+        {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+
+        @Override
+        public void write(int b) throws IOException
+        {
+            if (!buffer.hasRemaining())
+                flush();
+            buffer.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException
+        {
+            while (len > 0)
+            {
+                if (!buffer.hasRemaining())
+                    flush();
+                final int n = Math.min(len, buffer.remaining());
+                buffer.put(b, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException
+        {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            flush();
+        }
+    }
+
 }
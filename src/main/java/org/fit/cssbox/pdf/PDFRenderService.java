@@ -0,0 +1,299 @@
+/*
+ * PDFRenderService.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 18. 10. 2026, 15:22:08 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import org.apache.pdfbox.pdmodel.font.FontMappers;
+import org.fit.cssbox.css.CSSNorm;
+import org.fit.cssbox.css.DOMAnalyzer;
+import org.fit.cssbox.layout.BrowserConfig;
+import org.fit.cssbox.layout.ContentImage;
+import org.fit.cssbox.layout.Dimension;
+import org.fit.cssbox.layout.ImageCache;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import cz.vutbr.web.css.MediaSpec;
+
+/**
+ * A rendering service for converting many documents to PDF concurrently. It shares
+ * a single browser configuration with a bounded image cache and a single pool of threads
+ * for the image encoding and content compression among all the conversions and limits
+ * the number of conversions that run at the same time. The images that
+ * failed to load are retried after {@link #FAILURE_TIMEOUT}. The service is thread-safe,
+ * the configuration should be finished before the first document is rendered.
+ *
+ * @author burgetr
+ */
+public class PDFRenderService
+{
+    /** The time in milliseconds after which the images that failed to load are tried again */
+    public static final long FAILURE_TIMEOUT = 60000;
+
+    private final String pageFormat;
+    private final Semaphore permits;
+    private final BrowserConfig config;
+    private final ExecutorService executor;
+    private String mediaType = "screen";
+
+    /**
+     * Creates a new service.
+     * @param pageFormat the page format name used for all the documents (see {@link PDFEngine})
+     * @param maxConcurrency the maximal number of documents rendered at the same time
+     * @param maxImages the maximal number of decoded images kept in the shared image cache
+     */
+    public PDFRenderService(String pageFormat, int maxConcurrency, int maxImages)
+    {
+        this.pageFormat = pageFormat;
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.config = new BrowserConfig();
+        this.config.setImageCache(new BoundedImageCache(maxImages));
+        this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread thread = new Thread(r, "PDFRenderService worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        defineLogicalFonts(config);
+    }
+
+    /**
+     * Returns the browser configuration shared by all the conversions.
+     */
+    public BrowserConfig getConfig()
+    {
+        return config;
+    }
+
+    /**
+     * Returns the executor shared by all the conversions for encoding the images and
+     * compressing the page contents.
+     */
+    public ExecutorService getExecutor()
+    {
+        return executor;
+    }
+
+    /**
+     * Stops the shared threads. No documents may be rendered after the service is shut down.
+     */
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    public String getMediaType()
+    {
+        return mediaType;
+    }
+
+    public void setMediaType(String mediaType)
+    {
+        this.mediaType = mediaType;
+    }
+
+    /**
+     * Prepares the shared resources that are otherwise created by the first conversion,
+     * namely the index of the system fonts.
+     */
+    public void warmUp()
+    {
+        FontMappers.instance();
+    }
+
+    /**
+     * Renders a parsed document using the standard style sheets and the author style
+     * sheets referenced by the document.
+     * @param doc the document to render
+     * @param baseurl the document base URL
+     * @param windowSize the window size used for the layout
+     * @return the PDF document data
+     */
+    public byte[] render(Document doc, URL baseurl, Dimension windowSize)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        render(doc, baseurl, windowSize, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Renders a parsed document using the standard style sheets and the author style
+     * sheets referenced by the document.
+     * @param doc the document to render
+     * @param baseurl the document base URL
+     * @param windowSize the window size used for the layout
+     * @param out the output stream the PDF document is written to; it is closed when
+     * the document is written
+     */
+    public void render(Document doc, URL baseurl, Dimension windowSize, OutputStream out)
+    {
+        MediaSpec media = new MediaSpec(mediaType);
+        media.setDimensions(windowSize.width, windowSize.height);
+        media.setDeviceDimensions(windowSize.width, windowSize.height);
+
+        DOMAnalyzer da = new DOMAnalyzer(doc, baseurl);
+        da.setMediaSpec(media);
+        da.attributesToStyles(); //convert the HTML presentation attributes to inline styles
+        da.addStyleSheet(null, CSSNorm.stdStyleSheet(), DOMAnalyzer.Origin.AGENT); //use the standard style sheet
+        da.addStyleSheet(null, CSSNorm.userStyleSheet(), DOMAnalyzer.Origin.AGENT); //use the additional style sheet
+        da.addStyleSheet(null, CSSNorm.formsStyleSheet(), DOMAnalyzer.Origin.AGENT); //render form fields using css
+        da.getStyleSheets(); //load the author style sheets
+
+        render(da.getRoot(), da, windowSize, baseurl, out);
+    }
+
+    /**
+     * Renders a document whose style sheets have already been loaded by the analyzer.
+     * The calling thread waits while the maximal number of conversions is running.
+     * @param root the root DOM element
+     * @param decoder the DOM analyzer with the style sheets loaded
+     * @param windowSize the window size used for the layout
+     * @param baseurl the document base URL
+     * @return the PDF document data
+     */
+    public byte[] render(Element root, DOMAnalyzer decoder, Dimension windowSize, URL baseurl)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        render(root, decoder, windowSize, baseurl, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Renders a document whose style sheets have already been loaded by the analyzer.
+     * The calling thread waits while the maximal number of conversions is running.
+     * @param root the root DOM element
+     * @param decoder the DOM analyzer with the style sheets loaded
+     * @param windowSize the window size used for the layout
+     * @param baseurl the document base URL
+     * @param out the output stream the PDF document is written to; it is closed when
+     * the document is written
+     */
+    public void render(Element root, DOMAnalyzer decoder, Dimension windowSize, URL baseurl, OutputStream out)
+    {
+        try
+        {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        try
+        {
+            PDFEngine engine = new PDFEngine(pageFormat, root, decoder, baseurl);
+            try
+            {
+                engine.setConfig(config);
+                engine.setExecutor(executor);
+                engine.setDeferredCompression(true); //compressed on the shared threads
+                engine.setAutoMediaUpdate(false); //the media specification is given by the analyzer
+                engine.createLayout(windowSize);
+                engine.saveDocument(out);
+            } finally {
+                engine.closeDocument();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Sets some common fonts as the defaults for generic font families.
+     */
+    protected void defineLogicalFonts(BrowserConfig config)
+    {
+        config.setLogicalFont(BrowserConfig.SERIF, Arrays.asList("Times", "Times New Roman"));
+        config.setLogicalFont(BrowserConfig.SANS_SERIF, Arrays.asList("Arial", "Helvetica"));
+        config.setLogicalFont(BrowserConfig.MONOSPACE, Arrays.asList("Courier New", "Courier"));
+    }
+
+    //================================================================================
+
+    /**
+     * A thread-safe image cache that keeps the given number of the least recently used images.
+     * The failures are remembered for {@link PDFRenderService#FAILURE_TIMEOUT} only.
+     */
+    private static class BoundedImageCache implements ImageCache
+    {
+        private final Map<URL, ContentImage> images;
+        private final Map<URL, Long> failed; // the failure times
+
+        public BoundedImageCache(final int maxImages)
+        {
+            images = new LinkedHashMap<URL, ContentImage>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<URL, ContentImage> eldest)
+                {
+                    return size() > maxImages;
+                }
+            };
+            failed = new LinkedHashMap<URL, Long>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<URL, Long> eldest)
+                {
+                    return size() > maxImages;
+                }
+            };
+        }
+
+        @Override
+        public synchronized void put(URL url, ContentImage image)
+        {
+            images.put(url, image);
+        }
+
+        @Override
+        public synchronized ContentImage get(URL url)
+        {
+            return images.get(url);
+        }
+
+        @Override
+        public synchronized void putFailed(URL url)
+        {
+            failed.put(url, System.nanoTime());
+        }
+
+        @Override
+        public synchronized boolean hasFailed(URL url)
+        {
+            final Long time = failed.get(url);
+            if (time == null)
+                return false;
+            if (System.nanoTime() - time > FAILURE_TIMEOUT * 1000000L)
+            {
+                failed.remove(url); // try again
+                return false;
+            }
+            return true;
+        }
+    }
+
+}
@@ -32,17 +32,27 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
+import org.apache.pdfbox.cos.COSName;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
 import org.apache.pdfbox.pdmodel.common.PDRectangle;
 import org.apache.pdfbox.pdmodel.font.PDFont;
 import org.apache.pdfbox.pdmodel.graphics.color.PDColor;
 import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
-import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
 import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.graphics.pattern.PDTilingPattern;
 import org.apache.pdfbox.pdmodel.graphics.shading.PDShadingType3;
 import org.apache.pdfbox.pdmodel.graphics.state.PDExtendedGraphicsState;
 import org.apache.pdfbox.pdmodel.interactive.action.PDActionURI;
@@ -65,16 +75,14 @@ import org.fit.cssbox.layout.ReplacedImage;
 import org.fit.cssbox.layout.TextBox;
 import org.fit.cssbox.render.BackgroundImageImage;
 import org.fit.cssbox.render.BoxRenderer;
+import org.fit.cssbox.render.ElementBackground;
 import org.w3c.dom.Element;
 
 import cz.vutbr.web.css.CSSProperty;
 import cz.vutbr.web.css.NodeData;
-import cz.vutbr.web.css.Term;
-import cz.vutbr.web.css.TermColor;
 import cz.vutbr.web.css.TermFunction;
 
 import cz.vutbr.web.css.TermLengthOrPercent;
-import cz.vutbr.web.css.TermList;
 import cz.vutbr.web.csskit.Color;
 import cz.vutbr.web.css.TermFunction.Gradient.ColorStop;
 import cz.vutbr.web.css.TermIdent;
@@ -94,8 +102,10 @@ public class PDFRenderer implements BoxRenderer
     // PDFBox variables
     private PDDocument doc = null;
     private PDPage page = null;
+    private PageContent pageContent = null;
     private PDPageContentStream content = null;
     private PDRectangle pageFormat = null;
+    private List<PDPage> pages = new ArrayList<>();
 
     // variables for rendering border radius
     private float ax, ay, bx, by, cx, cy, dx, dy, ex, ey, fx, fy, gx, gy, hx, hy;
@@ -104,18 +114,57 @@ public class PDFRenderer implements BoxRenderer
     private int pageCount;
     private float pageEnd;
 
-    // TREE and LIST variables
-    private Node rootNodeOfTree, recentNodeInTree, rootNodeOfList, recentNodeInList;
-    private List<Node> nodesWithoutParent = new ArrayList<>(16);
+    // the range of pages to be rendered
+    private int firstPage = 0;
+    private int lastPage = Integer.MAX_VALUE;
+
+    // TREE; its nodes are numbered in the paint order
+    private RenderTree tree = new RenderTree();
+    private int recentNodeInTree = RenderTree.NONE;
+    // TREE nodes with page-break properties
+    private List<Integer> pagingNodes = new ArrayList<>(16);
+    private List<Integer> nodesWithoutParent = new ArrayList<>(16);
 
     // break/avoid tables
-    private List<float[]> breakTable = new ArrayList<>(2);
-    private List<float[]> avoidTable = new ArrayList<>(2);
+    private IntervalTable breakTable = new IntervalTable();
+    private IntervalTable avoidTable = new IntervalTable();
 
     // padding
     private float outputTopPadding;
     private float outputBottomPadding;
 
+    // encoded text strings
+    private TextEncodingCache textCache = new TextEncodingCache();
+
+    // links
+    private Map<Element, Element> anchorCache = new IdentityHashMap<>();
+    private Map<Element, String> anchorURLs = new IdentityHashMap<>();
+    private List<PageLink> pageLinks = new ArrayList<>();
+    private Map<Element, PageLink> pageLinkIndex = new IdentityHashMap<>();
+    private PDBorderStyleDictionary linkBorderStyle;
+    private boolean linkPerLine = false;
+
+    // graphics states shared by all the pages, indexed by the alpha value
+    private PDExtendedGraphicsState[] strokingAlphaStates = new PDExtendedGraphicsState[256];
+    private PDExtendedGraphicsState[] nonStrokingAlphaStates = new PDExtendedGraphicsState[256];
+
+    // embedded images
+    private float imageResolution = 0;
+    private ExecutorService executor = null;
+    private Map<ImageVariant, Future<ImageEncoder.EncodedImage>> imageTasks = new HashMap<>();
+    private Map<ImageVariant, PDImageXObject> preparedImages = new HashMap<>();
+    // downsampled images by the source image and the target size; shared by the threads
+    private Map<BufferedImage, Map<Long, BufferedImage>> downsampledImages = new ConcurrentHashMap<>();
+
+    // content streams are compressed while writing
+    private boolean compressContent = true;
+
+    // resources shared by all the pages or null for separate page resources
+    private PDResources sharedResources = null;
+
+    // the tiling patterns that repeat the background images
+    private Map<TilingKey, PDTilingPattern> bgTilePatterns = new HashMap<>();
+
 
     public PDFRenderer(float rootWidth, float rootHeight, PDDocument doc)
     {
@@ -127,6 +176,73 @@ public class PDFRenderer implements BoxRenderer
         initSettings(rootWidth);
     }
 
+    /**
+     * Restricts the output to the given range of pages. The pages before the range
+     * are still laid out but they are not included in the resulting document.
+     * @param firstPage the index of the first page to be rendered (starting with 0)
+     * @param lastPage the index of the last page to be rendered (inclusive)
+     * @throws IllegalArgumentException when the first page is negative or the last page
+     * precedes the first one
+     */
+    public void setPageRange(int firstPage, int lastPage)
+    {
+        if (firstPage < 0 || lastPage < firstPage)
+            throw new IllegalArgumentException("Invalid page range " + firstPage + " - " + lastPage);
+        this.firstPage = firstPage;
+        this.lastPage = lastPage;
+    }
+
+    /**
+     * Sets the maximal resolution of the images in the resulting document. The images
+     * drawn in a smaller size than their pixel size are downsampled to this resolution
+     * before they are stored in the document.
+     * @param dpi the resolution in pixels per inch or 0 for keeping the original images
+     */
+    public void setImageResolution(float dpi)
+    {
+        this.imageResolution = dpi;
+    }
+
+    /**
+     * Sets the executor used for encoding the images before the pages are drawn.
+     * The executor is owned by the caller and it is not shut down by the renderer.
+     * @param executor the executor or {@code null} for encoding the images while drawing
+     */
+    public void setExecutor(ExecutorService executor)
+    {
+        this.executor = executor;
+    }
+
+    /**
+     * Sets whether the page content streams should be compressed while they are written.
+     * When disabled, the streams should be compressed before the document is saved
+     * (see {@link StreamCompressor}).
+     */
+    public void setCompressContent(boolean compressContent)
+    {
+        this.compressContent = compressContent;
+    }
+
+    /**
+     * Sets whether all the pages should use a single resources dictionary. The fonts, graphics
+     * states, images and patterns used on several pages are then registered only once.
+     */
+    public void setSharedResources(boolean shared)
+    {
+        this.sharedResources = shared ? new PDResources() : null;
+    }
+
+    /**
+     * Sets whether a separate link annotation should be created for each line of a link.
+     * By default, a single annotation is created for each link on a page; its rectangle
+     * covers all the link boxes and the individual boxes are given by its QuadPoints.
+     * The annotations per line may be used for the viewers that ignore the QuadPoints.
+     */
+    public void setLinkPerLine(boolean linkPerLine)
+    {
+        this.linkPerLine = linkPerLine;
+    }
+
     private void initSettings(float rootWidth)
     {
         // calculate resize coefficient
@@ -153,156 +269,94 @@ public class PDFRenderer implements BoxRenderer
     @Override
     public void renderMarker(ListItemBox elem)
     {
-        // elem has no parent object - new Node will be root
         if (elem.getParent() == null)
-        {
-            // TREE
-            rootNodeOfTree = new Node(null, null, null, null, elem, null);
-            recentNodeInTree = rootNodeOfTree;
-            // LIST
-            rootNodeOfList = new Node(null, null, null, null, elem, rootNodeOfTree);
-            recentNodeInList = rootNodeOfList;
-        }
-        // add new Node with reference to elem inside to TREE and to LIST to
-        // right place
-        else
-        {
-            // TREE
-            Node targetNode = findNodeToInsert(elem.getParent().getOrder(), elem.getOrder());
-            if (targetNode == null)
-            {
-                Node tmpNode = new Node(null, null, null, null, elem, null);
-                tmpNode.setParentIDOfNoninsertedNode(elem.getParent().getOrder());
-                nodesWithoutParent.add(tmpNode);
-            }
-            else
-            {
-                recentNodeInTree = targetNode.insertNewNode(null, null, null, elem, null);
-            }
-
-            // LIST
-            recentNodeInList = recentNodeInList.insertNewNode(null, null, null, elem, recentNodeInTree);
-        }
+            resetTree();
+        insertToTree(tree.addItem(elem), elem);
     }
 
     /**
-     * Creates 2 new Nodes with reference to elem inside - one goes to LIST -
-     * second goes to TREE
+     * Creates a new node with reference to elem inside and inserts it to TREE
      */
     @Override
     public void renderElementBackground(ElementBox elem)
     {
-
-        // elem has no parent object - new Node will be root
         if (elem.getParent() == null)
-        {
-            // TREE
-            rootNodeOfTree = new Node(null, elem, null, null, null, null);
-            recentNodeInTree = rootNodeOfTree;
-            // LIST
-            rootNodeOfList = new Node(null, elem, null, null, null, rootNodeOfTree);
-            recentNodeInList = rootNodeOfList;
-        }
-        // add new Node with reference to elem inside to TREE and to LIST to
-        // right place
-        else
-        {
-            // TREE
-            Node targetNode = findNodeToInsert(elem.getParent().getOrder(), elem.getOrder());
-            if (targetNode == null)
-            {
-                Node tmpNode = new Node(null, elem, null, null, null, null);
-                tmpNode.setParentIDOfNoninsertedNode(elem.getParent().getOrder());
-                nodesWithoutParent.add(tmpNode);
-            }
-            else
-            {
-                recentNodeInTree = targetNode.insertNewNode(elem, null, null, null, null);
-            }
+            resetTree();
+        final int node = tree.addElem(elem);
+        insertToTree(node, elem);
 
-            // LIST
-            recentNodeInList = recentNodeInList.insertNewNode(elem, null, null, null, recentNodeInTree);
-        }
+        // remembers the elements that influence the paging
+        if (hasPagingProperties(elem))
+            pagingNodes.add(node);
     }
 
     /**
-     * Creates 2 Nodes for LIST and TREE with the same content - TEXT to insert
+     * Creates a node for TREE with the content - TEXT to insert
      * Inserts object to right place
      */
     @Override
     public void renderTextContent(TextBox text)
     {
-        // elem has no parent object - new Node will be root
         if (text.getParent() == null)
-        {
-            rootNodeOfTree = new Node(null, null, text, null, null, null);
-            recentNodeInTree = rootNodeOfTree;
-            rootNodeOfList = new Node(null, null, text, null, null, rootNodeOfTree);
-            recentNodeInList = rootNodeOfList;
-        }
-        // add new Node with reference to elem inside to TREE and to LIST to
-        // right place
-        else
-        {
-            // TREE
-            Node targetNode = findNodeToInsert(text.getParent().getOrder(), text.getOrder());
-            if (targetNode == null)
-            {
-                Node tmpNode = new Node(null, null, text, null, null, null);
-                tmpNode.setParentIDOfNoninsertedNode(text.getParent().getOrder());
-                nodesWithoutParent.add(tmpNode);
-            }
-            else
-            {
-                recentNodeInTree = targetNode.insertNewNode(null, text, null, null, null);
-            }
-            // LIST
-            recentNodeInList = recentNodeInList.insertNewNode(null, text, null, null, recentNodeInTree);
-        }
+            resetTree();
+        insertToTree(tree.addText(text), text);
     }
 
     /**
-     * Creates 2 Nodes for LIST and TREE with the same content - BOX to insert
+     * Creates a node for TREE with the content - BOX to insert
      * Inserts object to right place
      */
     @Override
     public void renderReplacedContent(ReplacedBox box)
     {
+        if (((Box) box).getParent() == null)
+            resetTree();
+        insertToTree(tree.addReplaced(box), (Box) box);
+    }
 
-        Box convertedBox = (Box) box;
-        // elem has no parent object - new Node will be root
-        if (convertedBox.getParent() == null)
+    /**
+     * Removes all the nodes from TREE before a new root is created.
+     */
+    private void resetTree()
+    {
+        tree.clear();
+        pagingNodes.clear();
+        nodesWithoutParent.clear();
+    }
+
+    /**
+     * Inserts a new node to the right place in TREE. The node of a box without a parent
+     * becomes the root of TREE. When the parent node is not found, the node is stored in
+     * the nodesWithoutParent table. The nodes are created in the paint order, so all of them
+     * are drawn in the order of their indices.
+     */
+    private void insertToTree(int node, Box box)
+    {
+        // box has no parent object - new node will be root
+        if (box.getParent() == null)
         {
-            rootNodeOfTree = new Node(null, null, null, box, null, null);
-            recentNodeInTree = rootNodeOfTree;
-            rootNodeOfList = new Node(null, null, null, box, null, rootNodeOfTree);
-            recentNodeInList = rootNodeOfList;
+            tree.setRoot(node);
+            recentNodeInTree = node;
         }
-        // add new Node with reference to elem inside to TREE and to LIST to
-        // right place
+        // add new node to TREE to right place
         else
         {
-            // TREE
-            Node targetNode = findNodeToInsert(convertedBox.getParent().getOrder(), convertedBox.getOrder());
-
-            if (targetNode == null)
+            int targetNode = findNodeToInsert(box.getParent().getOrder(), box.getOrder());
+            if (targetNode == RenderTree.NONE)
             {
-                Node tmpNode = new Node(null, null, null, box, null, null);
-                tmpNode.setParentIDOfNoninsertedNode(convertedBox.getParent().getOrder());
-                nodesWithoutParent.add(tmpNode);
+                tree.setParentIDOfNoninsertedNode(node, box.getParent().getOrder());
+                nodesWithoutParent.add(node);
             }
             else
             {
-                recentNodeInTree = targetNode.insertNewNode(null, null, box, null, null);
+                tree.insert(targetNode, node);
+                recentNodeInTree = node;
             }
-
-            // LIST
-            recentNodeInList = recentNodeInList.insertNewNode(null, null, box, null, recentNodeInTree);
         }
     }
 
     /**
-     * Processing the LIST and TREE data structures and writes data to OUTPUT
+     * Processing the TREE data structure and writes data to OUTPUT in the paint order
      * @throws IOException 
      */
     @Override
@@ -323,7 +377,10 @@ public class PDFRenderer implements BoxRenderer
         // document page
         makePaging();
 
-        // STEP E - transforms all data from LIST data structure to Apache
+        // places the nodes that could not be inserted to TREE according to their ancestors
+        placeNotInsertedNodes();
+
+        // STEP E - transforms all data from TREE in the paint order to Apache
         // PDFBox format
         // and using Apache PDFBox functions creates PDF document containing
         // transformed data
@@ -348,13 +405,13 @@ public class PDFRenderer implements BoxRenderer
             // to TREE
             for (int i = 0; i < nodesWithoutParent.size(); i++)
             {
-                Node findMyParent = nodesWithoutParent.get(i);
+                int findMyParent = nodesWithoutParent.get(i);
 
-                Node nodeToInsert = findNodeToInsert(findMyParent.getParentIDOfNoninsertedNode(), findMyParent.getID());
+                int nodeToInsert = findNodeToInsert(tree.getParentIDOfNoninsertedNode(findMyParent), tree.getID(findMyParent));
                 // inserts the node, if parent node found in the tree
-                if (nodeToInsert != null)
+                if (nodeToInsert != RenderTree.NONE)
                 {
-                    nodeToInsert.insertNewNode(findMyParent);
+                    tree.insert(nodeToInsert, findMyParent);
                     nodesWithoutParent.remove(i);
                 }
             }
@@ -364,6 +421,37 @@ public class PDFRenderer implements BoxRenderer
         }
     }
 
+    /**
+     * Moves the nodes that could not be inserted to TREE by the offset of their nearest
+     * ancestor that is present in TREE so that they are drawn at the right place after
+     * the paging. The nodes without such an ancestor are drawn without any offset.
+     */
+    private void placeNotInsertedNodes()
+    {
+        if (nodesWithoutParent.isEmpty())
+            return;
+        // index of the nodes in TREE by the box IDs
+        Map<Integer, Integer> treeNodes = new HashMap<>();
+        for (int node = 0; node < tree.size(); node++)
+        {
+            if (tree.isInTree(node))
+                treeNodes.putIfAbsent(tree.getID(node), node);
+        }
+        for (int node : nodesWithoutParent)
+        {
+            Box box = tree.getBox(node);
+            for (ElementBox anc = box.getParent(); anc != null; anc = anc.getParent())
+            {
+                Integer ancNode = treeNodes.get(anc.getOrder());
+                if (ancNode != null)
+                {
+                    tree.addPlusOffset(node, tree.getPlusOffset(ancNode));
+                    break;
+                }
+            }
+        }
+    }
+
     /**
      * STEP C - creates breakTable and avoidTable tables from data structure and
      * modifies them to contain only records that are not causing conflicts or
@@ -394,26 +482,30 @@ public class PDFRenderer implements BoxRenderer
     {
 
         pageEnd = pageFormat.getHeight();
+        final float rangeEnd = (lastPage + 1.0f) * pageFormat.getHeight();
         while (breakTable.size() > 0 || pageEnd < rootHeight * resCoef)
         {
+            // the breaks below the last rendered page do not influence the output
+            if (pageEnd > rangeEnd && (breakTable.size() == 0 || breakTable.getStart(0) > rangeEnd))
+                break;
+
             // continues breaking until the breakTable is not empty
             // or the end of page is below the content limit
-            if (breakTable.size() == 0 || pageEnd < breakTable.get(0)[0])
+            if (breakTable.size() == 0 || pageEnd < breakTable.getStart(0))
             {
                 // searches avoidTable for interval on the boundary between 2
                 // pages
                 boolean nalezeno = false;
-                for (int i = 0; i < avoidTable.size(); i++)
+                int i = avoidTable.findContaining(pageEnd, 0);
+                while (i != -1)
                 {
-                    if (avoidTable.get(i)[0] < pageEnd && avoidTable.get(i)[1] > pageEnd)
-                    {
-
-                        makeBreakAt(avoidTable.get(i)[2]);
-                        // sets new end of page according to height of the page
-                        // in PDF document
-                        this.pageEnd += this.pageFormat.getHeight();
-                        nalezeno = true;
-                    }
+                    makeBreakAt(avoidTable.getBreak(i));
+                    // sets new end of page according to height of the page
+                    // in PDF document
+                    this.pageEnd += this.pageFormat.getHeight();
+                    nalezeno = true;
+                    // the following intervals may contain the new page end
+                    i = avoidTable.findContaining(pageEnd, i + 1);
                 }
 
                 // not founded in avoidTable -> break normal
@@ -426,9 +518,9 @@ public class PDFRenderer implements BoxRenderer
                 }
             }
             // EOP is inside the interval in first record of breakTable
-            else if (pageEnd > breakTable.get(0)[0] && pageEnd < breakTable.get(0)[1])
+            else if (pageEnd > breakTable.getStart(0) && pageEnd < breakTable.getEnd(0))
             {
-                if (breakTable.get(0)[2] > pageEnd)
+                if (breakTable.getBreak(0) > pageEnd)
                 {
 
                     makeBreakAt(pageEnd);
@@ -437,33 +529,37 @@ public class PDFRenderer implements BoxRenderer
                     this.pageEnd += this.pageFormat.getHeight();
                 }
                 else
-                    makeBreakAt(breakTable.get(0)[2]);
-                breakTable.remove(0);
+                    makeBreakAt(breakTable.getBreak(0));
+                breakTable.removeFirst();
             }
             // EOP is after the interval in first record of breakTable
             else
             {
-                makeBreakAt(breakTable.get(0)[2]);
-                breakTable.remove(0);
+                makeBreakAt(breakTable.getBreak(0));
+                breakTable.removeFirst();
             }
         }
     }
 
     /**
-     * STEP E - transforms all data from LIST data structure to Apache PDFBox
+     * STEP E - transforms all data from TREE in the paint order to Apache PDFBox
      * format and using Apache PDFBox functions creates PDF document containing
      * transformed data
      * @throws IOException 
      */
     private void makePDF() throws IOException
     {
+        if (firstPage > 0 && firstPage >= pageCount)
+            throw new IllegalArgumentException("The first page " + firstPage + " is beyond the end of the document ("
+                    + pageCount + " pages)");
+
         // creates PDF document with first blank page
         initContentStream();
 
         // inserts all needed blank pages to PDF document
-        insertNPagesPDFBox(pageCount);
+        insertNPagesPDFBox(Math.max(1, Math.min(lastPage, pageCount - 1) - firstPage + 1));
 
-        // transforms all data from LIST data structure to Apache PDFBox format
+        // transforms all data from TREE in the paint order to Apache PDFBox format
         // and writes it do PDF document
         writeAllElementsToPDF();
         
@@ -472,44 +568,38 @@ public class PDFRenderer implements BoxRenderer
     }
 
     /////////////////////////////////////////////////////////////////////
-    // FUNCTIONS FOR WORKING WITH LIST AND TREE DATA STRUCTURE
+    // FUNCTIONS FOR WORKING WITH TREE DATA STRUCTURE
     /////////////////////////////////////////////////////////////////////
 
     /**
      * Finds the parent node to insert actual node in TREE
      * 
-     * @return the Node
+     * @return the node or {@link RenderTree#NONE}
      */
-    private Node findNodeToInsert(int parentID, int myID)
+    private int findNodeToInsert(int parentID, int myID)
     {
         // there is 2x ID=0 at the root of TREE - if my parents ID is zero and I
         // am not,
         // I have to insert to the second node with ID=0
         if (myID != 0 && parentID == 0)
-            return rootNodeOfTree.getAllChildren().firstElement();
+            return tree.getFirstChild(tree.getRoot());
 
         // wanted node "to insert" is recent node
-        if (recentNodeInTree.getID() == parentID)
+        if (tree.getID(recentNodeInTree) == parentID)
             return recentNodeInTree;
 
         // wanted node "to insert" is parent node of recent node
-        if (recentNodeInTree.getParentNode() != null && recentNodeInTree.getParentNode().getID() == parentID)
-            return recentNodeInTree.getParentNode();
+        final int recentParent = tree.getParent(recentNodeInTree);
+        if (recentParent != RenderTree.NONE && tree.getID(recentParent) == parentID)
+            return recentParent;
 
         // goes through whole tree
-        List<Node> queueOpen = new ArrayList<>(16);
-        queueOpen.add(rootNodeOfTree);
-        while (queueOpen.size() > 0)
+        for (int node = 0; node < tree.size(); node++)
         {
-            if (queueOpen.get(0).getID() == parentID)
-                return queueOpen.get(0);
-
-            List<Node> children = queueOpen.get(0).getAllChildren();
-            if (children != null)
-                queueOpen.addAll(children);
-            queueOpen.remove(0);
+            if (tree.isInTree(node) && tree.getID(node) == parentID)
+                return node;
         }
-        return null;
+        return RenderTree.NONE;
     }
 
     /////////////////////////////////////////////////////////////////////
@@ -517,23 +607,33 @@ public class PDFRenderer implements BoxRenderer
     /////////////////////////////////////////////////////////////////////
 
     /**
-     * Goes throw TREE and inserts items into breakTable and into avoidTable
+     * Checks whether the element has some of the page-break properties that
+     * create a record in breakTable or avoidTable
      */
-    private void createBreakAvoidTables()
+    private boolean hasPagingProperties(ElementBox elem)
     {
-        List<Node> queueOpen = new ArrayList<>(16);
-        queueOpen.add(rootNodeOfTree);
+        NodeData style = elem.getStyle();
+        CSSProperty.PageBreak pgbefore = style.getProperty("page-break-before");
+        CSSProperty.PageBreak pgafter = style.getProperty("page-break-after");
+        CSSProperty.PageBreakInside pginside = style.getProperty("page-break-inside");
+        return pgbefore == CSSProperty.PageBreak.ALWAYS || pgbefore == CSSProperty.PageBreak.AVOID
+                || pgafter == CSSProperty.PageBreak.ALWAYS || pgafter == CSSProperty.PageBreak.AVOID
+                || pginside == CSSProperty.PageBreakInside.AVOID;
+    }
 
-        // goes through TREE
-        while (queueOpen.size() > 0)
+    /**
+     * Goes throw the TREE nodes with page-break properties collected during
+     * rendering and inserts items into breakTable and into avoidTable
+     */
+    private void createBreakAvoidTables()
+    {
+        for (int recNodeToInvestigate : pagingNodes)
         {
-            Node recNodeToInvestigate = queueOpen.get(0);
-            queueOpen.remove(0);
-
-            if (recNodeToInvestigate.isElem())
+            // only the nodes that have been inserted to TREE are considered
+            if (tree.isInTree(recNodeToInvestigate))
             {
                 // gets CSS property for further classification
-                NodeData style = recNodeToInvestigate.getElem().getStyle();
+                NodeData style = tree.getElem(recNodeToInvestigate).getStyle();
                 CSSProperty.PageBreak pgbefore = style.getProperty("page-break-before");
                 CSSProperty.PageBreak pgafter = style.getProperty("page-break-after");
                 CSSProperty.PageBreakInside pginside = style.getProperty("page-break-inside");
@@ -545,10 +645,10 @@ public class PDFRenderer implements BoxRenderer
                     float[] tableRec = new float[4];
 
                     // finds start of the interval
-                    Node temp = getElementAbove(recNodeToInvestigate);
-                    if (temp == null)
-                        tableRec[0] = recNodeToInvestigate.getParentNode().getElemY() * resCoef
-                                + recNodeToInvestigate.getParentNode().getPlusOffset();
+                    int temp = getElementAbove(recNodeToInvestigate);
+                    if (temp == RenderTree.NONE)
+                        tableRec[0] = tree.getElemY(tree.getParent(recNodeToInvestigate)) * resCoef
+                                + tree.getPlusOffset(tree.getParent(recNodeToInvestigate));
                     else
                         tableRec[0] = getLastBottom(temp) * resCoef;
 
@@ -556,7 +656,7 @@ public class PDFRenderer implements BoxRenderer
                     tableRec[1] = getFirstTop(recNodeToInvestigate) * resCoef;
 
                     // finds the break place
-                    tableRec[2] = recNodeToInvestigate.getElem().getAbsoluteContentY() * resCoef;
+                    tableRec[2] = tree.getElem(recNodeToInvestigate).getAbsoluteContentY() * resCoef;
 
                     // inserts into breakTable
                     insertIntoTable(tableRec, breakTable);
@@ -572,20 +672,20 @@ public class PDFRenderer implements BoxRenderer
                     tableRec[0] = getLastBottom(recNodeToInvestigate) * resCoef;
 
                     // finds ends of the interval
-                    Node temp = getElementBelow(recNodeToInvestigate);
-                    if (temp != null)
+                    int temp = getElementBelow(recNodeToInvestigate);
+                    if (temp != RenderTree.NONE)
                     {
                         tableRec[1] = getFirstTop(temp) * resCoef;
                     }
                     else
                     {
-                        tableRec[1] = recNodeToInvestigate.getElemY() * resCoef
-                                + recNodeToInvestigate.getElemHeight() * resCoef;
+                        tableRec[1] = tree.getElemY(recNodeToInvestigate) * resCoef
+                                + tree.getElemHeight(recNodeToInvestigate) * resCoef;
                     }
 
                     // finds the break place
-                    tableRec[2] = recNodeToInvestigate.getElem().getAbsoluteContentY() * resCoef
-                            + recNodeToInvestigate.getElem().getHeight() * resCoef;
+                    tableRec[2] = tree.getElem(recNodeToInvestigate).getAbsoluteContentY() * resCoef
+                            + tree.getElem(recNodeToInvestigate).getHeight() * resCoef;
 
                     // inserts into breakTable
                     insertIntoTable(tableRec, breakTable);
@@ -598,14 +698,14 @@ public class PDFRenderer implements BoxRenderer
                     float[] tableRec = new float[4];
 
                     // finds start of the interval
-                    Node temp = getElementAbove(recNodeToInvestigate);
-                    if (temp != null)
+                    int temp = getElementAbove(recNodeToInvestigate);
+                    if (temp != RenderTree.NONE)
                     {
                         tableRec[0] = getLastBottom(temp) * resCoef;
                     }
                     else
                     {
-                        tableRec[0] = recNodeToInvestigate.getElemY() * resCoef;
+                        tableRec[0] = tree.getElemY(recNodeToInvestigate) * resCoef;
                     }
 
                     // finds ends of the interval
@@ -628,15 +728,15 @@ public class PDFRenderer implements BoxRenderer
                     tableRec[0] = getLastBottom(recNodeToInvestigate) * resCoef;
 
                     // finds ends of the interval
-                    Node temp = getElementBelow(recNodeToInvestigate);
-                    if (temp != null)
+                    int temp = getElementBelow(recNodeToInvestigate);
+                    if (temp != RenderTree.NONE)
                     {
                         tableRec[1] = getFirstTop(temp) * resCoef;
                     }
                     else
                     {
-                        tableRec[1] = recNodeToInvestigate.getElemY() * resCoef
-                                + recNodeToInvestigate.getElemHeight() * resCoef;
+                        tableRec[1] = tree.getElemY(recNodeToInvestigate) * resCoef
+                                + tree.getElemHeight(recNodeToInvestigate) * resCoef;
                     }
 
                     // finds the break place
@@ -653,10 +753,10 @@ public class PDFRenderer implements BoxRenderer
                     float[] tableRec = new float[4];
 
                     // finds start of the interval
-                    tableRec[0] = recNodeToInvestigate.getElem().getAbsoluteContentY() * resCoef - 1;
+                    tableRec[0] = tree.getElem(recNodeToInvestigate).getAbsoluteContentY() * resCoef - 1;
 
                     // finds ends of the interval
-                    tableRec[1] = tableRec[0] + recNodeToInvestigate.getElem().getHeight() * resCoef + 1;
+                    tableRec[1] = tableRec[0] + tree.getElem(recNodeToInvestigate).getHeight() * resCoef + 1;
 
                     // finds the break place
                     tableRec[2] = tableRec[0] - 1;
@@ -665,33 +765,15 @@ public class PDFRenderer implements BoxRenderer
                     insertIntoTable(tableRec, avoidTable);
                 }
             }
-
-            // adds all children to the end of queueOpen
-            if (recNodeToInvestigate.getAllChildren() != null)
-            {
-                queueOpen.addAll(recNodeToInvestigate.getAllChildren());
-            }
         }
     }
 
     /**
      * Inserts record into breakTable or into avoidTable
      */
-    private void insertIntoTable(float[] tableRec, List<float[]> table)
+    private void insertIntoTable(float[] tableRec, IntervalTable table)
     {
-
-        boolean inserted = false;
-        for (int i = 0; i < table.size(); i++)
-        {
-            if (tableRec[0] < table.get(i)[0])
-            {
-                table.add(i, tableRec);
-                inserted = true;
-                break;
-            }
-        }
-        if (!inserted)
-            table.add(tableRec);
+        table.insert(tableRec[0], tableRec[1], tableRec[2]);
     }
 
     /**
@@ -700,11 +782,7 @@ public class PDFRenderer implements BoxRenderer
      */
     private void deleteAvoidsBiggerThan(float biggerThan)
     {
-        for (int i = 0; i < avoidTable.size(); i++)
-        {
-            if (avoidTable.get(i)[1] - avoidTable.get(i)[0] > biggerThan * pageFormat.getHeight())
-                avoidTable.remove(i);
-        }
+        avoidTable.removeLongerThan(biggerThan * pageFormat.getHeight());
     }
 
     /**
@@ -712,28 +790,7 @@ public class PDFRenderer implements BoxRenderer
      */
     private void mergeAvoids(float biggerThan)
     {
-        // goes through table
-        for (int i = 1; i < avoidTable.size(); i++)
-        {
-            // tests if intervals in records are overlapping
-            if (avoidTable.get(i - 1)[1] > avoidTable.get(i)[0])
-            {
-                // tests size of interval if it is not larger than allowed
-                if (avoidTable.get(i)[1] - avoidTable.get(i - 1)[0] > biggerThan * pageFormat.getHeight())
-                {
-                    avoidTable.remove(i);
-                    i--;
-                }
-                // merges overlapping records
-                else
-                {
-                    if (avoidTable.get(i - 1)[1] < avoidTable.get(i)[1])
-                        avoidTable.get(i - 1)[1] = avoidTable.get(i)[1];
-                    avoidTable.remove(i);
-                    i--;
-                }
-            }
-        }
+        avoidTable.mergeOverlapping(biggerThan * pageFormat.getHeight());
     }
 
     /**
@@ -741,20 +798,9 @@ public class PDFRenderer implements BoxRenderer
      */
     private void updateTables(float moveBy)
     {
-        // moves all records in breakTable
-        for (int i = 0; i < breakTable.size(); i++)
-        {
-            breakTable.get(i)[0] += moveBy;
-            breakTable.get(i)[1] += moveBy;
-            breakTable.get(i)[2] += moveBy;
-        }
-        // moves all records in avoidTable
-        for (int i = 0; i < avoidTable.size(); i++)
-        {
-            avoidTable.get(i)[0] += moveBy;
-            avoidTable.get(i)[1] += moveBy;
-            avoidTable.get(i)[2] += moveBy;
-        }
+        // the records are moved lazily using the table offsets
+        breakTable.moveBy(moveBy);
+        avoidTable.moveBy(moveBy);
     }
 
     /////////////////////////////////////////////////////////////////////
@@ -764,205 +810,62 @@ public class PDFRenderer implements BoxRenderer
     /**
      * Finds the element above element
      * 
-     * @return the Node
+     * @return the node or {@link RenderTree#NONE}
      */
-    private Node getElementAbove(Node recentNode)
+    private int getElementAbove(int recentNode)
     {
-        if (recentNode == null)
-            return null;
-
-        Node nParent = recentNode.getParentNode();
-        if (nParent == null)
-            return null;
-
-        List<Node> nChildren = nParent.getAllChildren();
-        if (nChildren == null)
-            return null;
-
-        Node nodeX = null;
-        // goes through whole TREE
-        while (nChildren.size() > 0)
-        {
-            Node temp = nChildren.get(0);
-            nChildren.remove(0);
+        if (recentNode == RenderTree.NONE)
+            return RenderTree.NONE;
 
-            // if recent child's ID is equal to original nod's ID - continue
-            if (recentNode.getID() == temp.getID())
-                continue;
-
-            // if the child is not above - continue
-            if (temp.getElemY() * resCoef + temp.getPlusOffset() + temp.getElemHeight() * resCoef
-                    + temp.getPlusHeight() > recentNode.getElemY() * resCoef + recentNode.getPlusOffset())
-                continue;
+        int nParent = tree.getParent(recentNode);
+        if (nParent == RenderTree.NONE)
+            return RenderTree.NONE;
 
-            if (nodeX == null)
-                nodeX = temp;
-            else if (nodeX.getElemY() * resCoef + nodeX.getPlusOffset() + nodeX.getElemHeight() * resCoef
-                    + nodeX.getPlusHeight() <= temp.getElemY() * resCoef + temp.getPlusOffset()
-                            + temp.getElemHeight() * resCoef + temp.getPlusHeight())
-            {
-                nodeX = temp;
-            }
-        }
-        return nodeX;
+        // uses the sorted index of the parent's children
+        return tree.getChildAbove(nParent, recentNode, resCoef);
     }
 
     /**
      * Finds the element below element
      * 
-     * @return the Node
+     * @return the node or {@link RenderTree#NONE}
      */
-    private Node getElementBelow(Node recentNode)
+    private int getElementBelow(int recentNode)
     {
-        if (recentNode == null)
-            return null;
-        // gets Vector of all parents children (including the node itself)
-        Node nParent = recentNode.getParentNode();
-        if (nParent == null)
-            return null;
-        List<Node> nChildren = nParent.getAllChildren();
-
-        if (nChildren == null)
-            return null;
-        Node wantedNode = null;
-
-        // goes through all children and search for node below the node given
-        while (nChildren.size() > 0)
-        {
-            // gets first element from Vector
-            Node temp = nChildren.get(0);
-            nChildren.remove(0);
-
-            // continues if recent node is the same as the original node
-            if (recentNode.getID() == temp.getID())
-                continue;
-
-            // new candidate is not under recent node
-            if (temp.getElemY() * resCoef + temp.getPlusOffset() < recentNode.getElemY() * resCoef
-                    + recentNode.getElemHeight() * resCoef + recentNode.getPlusHeight() + recentNode.getPlusOffset())
-            {
-                continue;
-            }
-
-            // wantedNode gets new reference if it has not one yet or the old
-            // node
-            // contains element with lower position then new candidate
-            if (wantedNode == null)
-                wantedNode = temp;
-            else if (wantedNode.getElemY() * resCoef + wantedNode.getPlusOffset() >= temp.getElemY() * resCoef
-                    + temp.getPlusOffset())
-            {
-                wantedNode = temp;
-            }
-        }
-        return wantedNode;
+        if (recentNode == RenderTree.NONE)
+            return RenderTree.NONE;
+        int nParent = tree.getParent(recentNode);
+        if (nParent == RenderTree.NONE)
+            return RenderTree.NONE;
+
+        // uses the sorted index of the parent's children
+        return tree.getChildBelow(nParent, recentNode, resCoef);
     }
 
     /**
-     * Finds the top of first child element in Node
+     * Finds the top of first child element in the node
      * 
      * @return the resized distance from top of the document or -1 for not null
      *         argument
      */
-    private float getFirstTop(Node recentNode)
+    private float getFirstTop(int recentNode)
     {
-        if (recentNode == null)
+        if (recentNode == RenderTree.NONE)
             return -1;
-
-        List<Node> nChildren = recentNode.getAllChildren();
-        if (nChildren == null)
-            return recentNode.getElemY() * resCoef + recentNode.getPlusOffset();
-
-        float vysledekNeelem = Float.MAX_VALUE;
-        float vysledekElem = Float.MAX_VALUE;
-
-        // goes through subTREE and searches for first not-ElementBox element
-        // - in case it doesn't contain any not-ElementBox element, it would
-        // pick first ElementBox element
-        List<Node> subTree = nChildren;
-
-        while (subTree.size() > 0)
-        {
-            Node aktualni = subTree.get(0);
-            subTree.remove(0);
-            List<Node> subChildren = aktualni.getAllChildren();
-            if (subChildren != null)
-                subTree.addAll(subChildren);
-
-            if (aktualni.isElem())
-            {
-                if (aktualni.getElemY() * resCoef + aktualni.getPlusOffset() < vysledekElem)
-                {
-                    vysledekElem = aktualni.getElemY() * resCoef + aktualni.getPlusOffset();
-                }
-            }
-            else
-            {
-                if (aktualni.getElemY() * resCoef + aktualni.getPlusOffset() < vysledekNeelem)
-                {
-                    vysledekNeelem = aktualni.getElemY() * resCoef + aktualni.getPlusOffset();
-                }
-            }
-        }
-        if (vysledekNeelem != Float.MAX_VALUE)
-            return vysledekNeelem;
-        if (vysledekElem != Float.MAX_VALUE)
-            return vysledekElem;
-
-        return -2;
+        // uses the extents cached in the subtree
+        return tree.getFirstTop(recentNode, resCoef);
     }
 
     /**
-     * Finds the bottom of last child element in Node
+     * Finds the bottom of last child element in the node
      * 
      * @return the resized distance from top of the document
      */
-    private float getLastBottom(Node recentNode)
+    private float getLastBottom(int recentNode)
     {
-
-        if (recentNode == null) return -1;
-        List<Node> nChildren = recentNode.getAllChildren();
-        if (nChildren == null)
-            return recentNode.getElemY() * resCoef + recentNode.getElemHeight() * resCoef
-                + recentNode.getPlusOffset() + recentNode.getPlusHeight();
-
-        float vysledekNeelem = -Float.MAX_VALUE;
-        float vysledekElem = -Float.MAX_VALUE;
-
-        // goes through subTREE and searches for last not-ElementBox element
-        // - in case it doesn't contain any not-ElementBox element, it would
-        // pick last ElementBox element
-        List<Node> subTree = nChildren;
-
-        while (subTree.size() > 0)
-        {
-            Node aktualni = subTree.get(0);
-            subTree.remove(0);
-            List<Node> subChildren = aktualni.getAllChildren();
-            if (subChildren != null) subTree.addAll(subChildren);
-
-            if (aktualni.isElem())
-            {
-                if (aktualni.getElemY() * resCoef + aktualni.getElemHeight() * resCoef + aktualni.getPlusOffset()
-                        + aktualni.getPlusHeight() > vysledekElem)
-                    vysledekElem = aktualni.getElemY() * resCoef + aktualni.getElemHeight() * resCoef
-                            + aktualni.getPlusOffset() + aktualni.getPlusHeight();
-            }
-            else
-            {
-                if (aktualni.getElemY() * resCoef + aktualni.getElemHeight() * resCoef + aktualni.getPlusOffset()
-                        + aktualni.getPlusHeight() > vysledekNeelem)
-                    vysledekNeelem = aktualni.getElemY() * resCoef + aktualni.getElemHeight() * resCoef
-                            + aktualni.getPlusOffset() + aktualni.getPlusHeight();
-            }
-        }
-
-        if (vysledekNeelem != -Float.MAX_VALUE)
-            return vysledekNeelem;
-        if (vysledekElem != -Float.MAX_VALUE)
-            return vysledekElem;
-
-        return -2;
+        if (recentNode == RenderTree.NONE) return -1;
+        // uses the extents cached in the subtree
+        return tree.getLastBottom(recentNode, resCoef);
     }
 
     /**
@@ -981,91 +884,24 @@ public class PDFRenderer implements BoxRenderer
         // are crossed by the line1
         // - picks one element from this set, which has the lowest distance from
         // the top of the page
-        List<Node> myOpen = new ArrayList<>(2);
-        myOpen.add(rootNodeOfTree);
-
-        float line2 = line1;
-        while (myOpen.size() > 0)
-        {
-            Node myRecentNode = myOpen.get(0);
-            myOpen.remove(0);
-            List<Node> myChildren = myRecentNode.getAllChildren();
-            if (myChildren != null)
-            {
-                myOpen.addAll(myChildren);
-            }
-
-            float startOfTheElement = myRecentNode.getElemY() * resCoef + myRecentNode.getPlusOffset();
-            float endOfTheElement = startOfTheElement + myRecentNode.getElemHeight() * resCoef
-                    + myRecentNode.getPlusHeight();
-
-            // sets the line2 variable to match the top of the element from set
-            // which has the lowest distance from the top of the document
-            if (!myRecentNode.isElem())
-            {
-                if (startOfTheElement < line1 && endOfTheElement > line1)
-                {
-                    if (startOfTheElement < line2)
-                    {
-                        line2 = startOfTheElement;
-                    }
-                }
-            }
-        }
+        float line2 = findTopOfCrossedContent(line1);
 
         // counts line3
-        List<Node> myOpen2 = new ArrayList<>(2);
-        myOpen2.add(rootNodeOfTree);
-
-        float line3 = line2;
-        while (myOpen2.size() > 0)
-        {
-            Node myRecentNode2 = myOpen2.get(0);
-            myOpen2.remove(0);
-            List<Node> myChildren2 = myRecentNode2.getAllChildren();
-            if (myChildren2 != null)
-            {
-                myOpen2.addAll(myChildren2);
-            }
-
-            float startOfTheElement = myRecentNode2.getElemY() * resCoef + myRecentNode2.getPlusOffset();
-            float endOfTheElement = startOfTheElement + myRecentNode2.getElemHeight() * resCoef
-                    + myRecentNode2.getPlusHeight();
-
-            // counts the line3
-            if (!myRecentNode2.isElem())
-            {
-                if (startOfTheElement < line2 && endOfTheElement > line2)
-                {
-                    if (startOfTheElement < line3)
-                    {
-                        line3 = startOfTheElement;
-                    }
-                }
-            }
-        }
+        float line3 = findTopOfCrossedContent(line2);
 
         // counts distance between lines
         spaceBetweenLines = (float) (pageFormat.getHeight() * Math.ceil((line1 - 1) / pageFormat.getHeight()) - line3);
 
         // goes through TREE and increases height or moves element
-        List<Node> myOpen3 = new ArrayList<>(2);
-        myOpen3.add(rootNodeOfTree);
-
-        while (myOpen3.size() > 0)
+        for (int node = 0; node < tree.size(); node++)
         {
-            Node myRecentNode = myOpen3.get(0);
-            myOpen3.remove(0);
-            List<Node> myChildren = myRecentNode.getAllChildren();
-            if (myChildren != null)
-            {
-                myOpen3.addAll(myChildren);
-            }
+            if (!tree.isInTree(node))
+                continue;
 
             // counts start and end of the element
-            float startOfTheElement = myRecentNode.getElemY() * resCoef + myRecentNode.getPlusOffset();
-            float endOfTheElement = startOfTheElement + myRecentNode.getElemHeight() * resCoef
-                    + myRecentNode.getPlusHeight() - 10 * resCoef;
+            float startOfTheElement = tree.getElemY(node) * resCoef + tree.getPlusOffset(node);
+            float endOfTheElement = startOfTheElement + tree.getElemHeight(node) * resCoef
+                    + tree.getPlusHeight(node) - 10 * resCoef;
 
             // whole element if above the line2 - nothing happens
             if (endOfTheElement <= line2)
@@ -1075,19 +911,19 @@ public class PDFRenderer implements BoxRenderer
             // - is ElementBox
             // - is crossed by the line2
             // - has got at least 2 children
-            else if (myRecentNode.isElem() && myRecentNode.getElemY() * resCoef + myRecentNode.getPlusOffset() < line2
-                    && myRecentNode.getElemY() * resCoef + myRecentNode.getPlusOffset()
-                            + myRecentNode.getElemHeight() * resCoef + myRecentNode.getPlusHeight() >= line2
-                    && myRecentNode.getAllChildren() != null)
+            else if (tree.isElem(node) && tree.getElemY(node) * resCoef + tree.getPlusOffset(node) < line2
+                    && tree.getElemY(node) * resCoef + tree.getPlusOffset(node)
+                            + tree.getElemHeight(node) * resCoef + tree.getPlusHeight(node) >= line2
+                    && tree.hasChildren(node))
             {
-                myRecentNode.addPlusHeight(outputTopPadding + spaceBetweenLines + outputBottomPadding);
+                tree.addPlusHeight(node, outputTopPadding + spaceBetweenLines + outputBottomPadding);
             }
             // moves element in one of following cases:
             // - element is completely below the line2
             // - element is crossing line2 and is not ElementBox
             else
             {
-                myRecentNode.addPlusOffset(outputTopPadding + spaceBetweenLines + outputBottomPadding);
+                tree.addPlusOffset(node, outputTopPadding + spaceBetweenLines + outputBottomPadding);
             }
         }
 
@@ -1099,6 +935,31 @@ public class PDFRenderer implements BoxRenderer
         this.pageCount = (int) Math.ceil(rootHeight * resCoef / pageFormat.getHeight());
     }
 
+    /**
+     * Finds the top of the highest non-ElementBox element in TREE that is crossed by the line.
+     * The elements are checked in the order of the node indices because only the minimum
+     * is used.
+     *
+     * @return the resized distance from top of the document or the line itself when
+     *         there is no such element
+     */
+    private float findTopOfCrossedContent(float line)
+    {
+        float ret = line;
+        for (int node = 0; node < tree.size(); node++)
+        {
+            if (!tree.isElem(node) && tree.isInTree(node))
+            {
+                float startOfTheElement = tree.getElemY(node) * resCoef + tree.getPlusOffset(node);
+                float endOfTheElement = startOfTheElement + tree.getElemHeight(node) * resCoef
+                        + tree.getPlusHeight(node);
+                if (startOfTheElement < line && endOfTheElement > line && startOfTheElement < ret)
+                    ret = startOfTheElement;
+            }
+        }
+        return ret;
+    }
+
     ////////////////////////////////////////////////////////////////////////
     // INSERTING TO PDF
     //
@@ -1112,33 +973,49 @@ public class PDFRenderer implements BoxRenderer
      */
     private void writeAllElementsToPDF() throws IOException
     {
+        // the range of pages to be written
+        final int rangeFirst = firstPage;
+        final int rangeLast = Math.min(lastPage, pageCount - 1);
+        final boolean partial = rangeFirst > 0 || rangeLast < pageCount - 1;
+        final float rangeTop = rangeFirst * pageFormat.getHeight();
+        final float rangeBottom = (rangeLast + 1) * pageFormat.getHeight();
+
+        // starts encoding the images in advance
+        prepareImages(rangeFirst, rangeLast, partial, rangeTop, rangeBottom);
+
         // goes through all pages in PDF and inserts to all elements to current page
-        Filter pdfFilter = new Filter(null, 0, 0, 1.0f, 1.0f);
-        BorderRadius borRad = new BorderRadius();
-        boolean isBorderRad = false;
+        final PaintState state = new PaintState();
         boolean transf = false;
-        for (int i = 0; i < pageCount; i++)
+        for (int i = rangeFirst; i <= rangeLast; i++)
         {
-            changeCurrentPageToPDFBox(i);
+            changeCurrentPageToPDFBox(i - rangeFirst);
 
-            List<Node> elementsToWriteToPDF = new ArrayList<>(2);
-            elementsToWriteToPDF.add(rootNodeOfList);
-            while (elementsToWriteToPDF.size() > 0)
+            // goes through the nodes in the paint order
+            for (int currentNode = 0; currentNode < tree.size(); currentNode++)
             {
-                // get first element from Vector
-                Node currentNode = elementsToWriteToPDF.get(0);
-                elementsToWriteToPDF.remove(0);
-
-                // get all children of recentNode and add to
-                // elementsToWriteToPDF
-                List<Node> allChildren = currentNode.getAllChildren();
-                if (allChildren != null) elementsToWriteToPDF.addAll(allChildren);
+                // skips the nodes outside of the rendered pages
+                if (partial && isOutsideRange(currentNode, rangeTop, rangeBottom))
+                {
+                    if (tree.isElem(currentNode))
+                    {
+                        // a skipped element changes the state used by the following nodes
+                        state.update(getPaintStyle(currentNode));
+                        // and it ends the previous transformation as well
+                        if (transf)
+                        {
+                            content.restoreGraphicsState();
+                            transf = false;
+                        }
+                    }
+                    continue;
+                }
 
                 // inserts elem data to PDF
-                if (currentNode.isElem())
+                if (tree.isElem(currentNode))
                 {
-                    ElementBox elem = currentNode.getElem();
-                    if (insertTransform(currentNode, elem, i, transf)) // if elemen has transform property and succesfully inserted
+                    ElementBox elem = tree.getElem(currentNode);
+                    PaintStyle style = getPaintStyle(currentNode);
+                    if (insertTransform(currentNode, elem, style, i, transf)) // if elemen has transform property and succesfully inserted
                     {
                         transf = true;
                     }
@@ -1154,39 +1031,16 @@ public class PDFRenderer implements BoxRenderer
                     Matrix radMatrix = new Matrix();
                     PDShadingType3 shading = null;
 
-                    if (elem.isBlock() || elem.isReplaced())
-                    {
-                        // filter
-                        CSSDecoder dec = new CSSDecoder(elem.getVisualContext());
-                        Rectangle bounds = elem.getAbsoluteBorderBounds();
-                        CSSProperty.Filter filter = elem.getStyle().getProperty("filter");
-                        if (filter == CSSProperty.Filter.list_values)
-                        {
-                            pdfFilter = createFilter(elem);
-                        }
-
-                        // border-radius
-                        TermList value1 = elem.getStyle().getValue(TermList.class, "border-top-right-radius");
-                        TermList value2 = elem.getStyle().getValue(TermList.class, "border-top-left-radius");
-                        TermList value3 = elem.getStyle().getValue(TermList.class, "border-bottom-right-radius");
-                        TermList value4 = elem.getStyle().getValue(TermList.class, "border-bottom-left-radius");
-                        if (value1 != null || value2 != null || value3 != null || value4 != null)
-                        {
-                            isBorderRad = true;
-                            borRad.setCornerRadius(value2, value1, value4, value3, elem, resCoef);
-                        }
-                        else
-                        {
-                            isBorderRad = false;
-                            borRad = new BorderRadius(); // calculating corner radiuses
-                        }
-                        
-                        CSSProperty.BackgroundImage backgrd = elem.getStyle().getProperty("background-image");
+                    // filter and border-radius
+                    state.update(style);
 
-                        if (backgrd == CSSProperty.BackgroundImage.gradient)
+                    if (style.isBlockOrReplaced())
+                    {
+                        if (style.getBackgroundImage() == CSSProperty.BackgroundImage.gradient)
                         {
-                            TermFunction.Gradient values = elem.getStyle().getValue(TermFunction.Gradient.class,
-                                    "background-image");
+                            CSSDecoder dec = new CSSDecoder(elem.getVisualContext());
+                            Rectangle bounds = elem.getAbsoluteBorderBounds();
+                            TermFunction.Gradient values = style.getGradient();
 
                             if (values instanceof TermFunction.LinearGradient)
                             {
@@ -1216,13 +1070,13 @@ public class PDFRenderer implements BoxRenderer
 
                                     float[] newStartXY = new float[2];
                                     newStartXY = transXYtoPDF(elem, (float) (linGrad.x1 * resCoef),
-                                            (float) (linGrad.y1 * resCoef), currentNode.getTreeEq().getPlusOffset(),
-                                            currentNode.getTreeEq().getPlusHeight(), i);
+                                            (float) (linGrad.y1 * resCoef), tree.getPlusOffset(currentNode),
+                                            tree.getPlusHeight(currentNode), i);
 
                                     float[] newEndXY = new float[2];
                                     newEndXY = transXYtoPDF(elem, (float) (linGrad.x2 * resCoef),
-                                            (float) (linGrad.y2 * resCoef), currentNode.getTreeEq().getPlusOffset(),
-                                            currentNode.getTreeEq().getPlusHeight(), i);
+                                            (float) (linGrad.y2 * resCoef), tree.getPlusOffset(currentNode),
+                                            tree.getPlusHeight(currentNode), i);
                                     // create linear gradient
                                     shading = linGrad.createLinearGrad(newStartXY[0], newStartXY[1], newEndXY[0],
                                             newEndXY[1]);
@@ -1259,8 +1113,8 @@ public class PDFRenderer implements BoxRenderer
 
                                     float[] newXY = new float[2];
                                     newXY = transXYtoPDF(elem, radGrad.cx * resCoef, radGrad.cy * resCoef,
-                                            currentNode.getTreeEq().getPlusOffset(),
-                                            currentNode.getTreeEq().getPlusHeight(), i);
+                                            tree.getPlusOffset(currentNode),
+                                            tree.getPlusHeight(currentNode), i);
 
                                     AffineTransform moveToCenter = new AffineTransform();
 
@@ -1281,102 +1135,192 @@ public class PDFRenderer implements BoxRenderer
                     }
 
                     // draws colored background
-                    if (!isBorderRad)
-                        drawBgToElem(elem, i, currentNode.getTreeEq().getPlusOffset(),
-                            currentNode.getTreeEq().getPlusHeight(), radialGrad, linearGrad, shading, radMatrix);
+                    if (!state.isBorderRad)
+                        drawBgToElem(elem, i, tree.getPlusOffset(currentNode),
+                            tree.getPlusHeight(currentNode), radialGrad, linearGrad, shading, radMatrix);
 
                     // draws background image
                     if (elem.getBackgroundImages() != null && elem.getBackgroundImages().size() > 0)
                     {
-                        insertBgImg(elem, i, currentNode.getTreeEq().getPlusOffset(),
-                                currentNode.getTreeEq().getPlusHeight(), pdfFilter, isBorderRad, borRad);
+                        insertBgImg(elem, i, tree.getPlusOffset(currentNode),
+                                tree.getPlusHeight(currentNode), state.filter, state.isBorderRad, state.borRad, transf);
                     }
 
                     // draws border
-                    drawBorder(elem, i, currentNode.getTreeEq().getPlusOffset(),
-                            currentNode.getTreeEq().getPlusHeight(), isBorderRad, borRad);
+                    drawBorder(elem, style, i, tree.getPlusOffset(currentNode),
+                            tree.getPlusHeight(currentNode), state.isBorderRad, state.borRad);
                 }
 
                 // inserts text to PDF
-                if (currentNode.isText())
+                if (tree.isText(currentNode))
                 {
                     // draws the text if it is not overlapping the parent
                     // element more then 60 %
                     // on the right side
-                    Node parent = currentNode.getTreeEq().getParentNode().getParentNode();
-                    float parentRightEndOfElement = (parent.getElemX() + parent.getElemWidth()) * resCoef;
-                    float recentRightEndOfElement = (currentNode.getElemX() + currentNode.getElemWidth()) * resCoef;
-                    float widthRecentElem = currentNode.getElemWidth() * resCoef;
+                    // (the nodes not inserted to TREE are not checked)
+                    int parent = (tree.getParent(currentNode) != RenderTree.NONE) ? tree.getParent(tree.getParent(currentNode)) : RenderTree.NONE;
+                    float recentRightEndOfElement = (tree.getElemX(currentNode) + tree.getElemWidth(currentNode)) * resCoef;
+                    float widthRecentElem = tree.getElemWidth(currentNode) * resCoef;
 
-                    if (parentRightEndOfElement - recentRightEndOfElement > -widthRecentElem * 0.6)
+                    if (parent == RenderTree.NONE || (tree.getElemX(parent) + tree.getElemWidth(parent)) * resCoef - recentRightEndOfElement > -widthRecentElem * 0.6)
                     {
-                        TextBox text = currentNode.getText();
+                        TextBox text = tree.getText(currentNode);
                         if (text.isEmpty() || !text.isVisible() || !text.isDeclaredVisible() || !text.isDisplayed())
                             continue;
-                        insertText(text, i, currentNode.getTreeEq().getPlusOffset(),
-                                currentNode.getTreeEq().getPlusHeight());
+                        insertText(text, i, tree.getPlusOffset(currentNode),
+                                tree.getPlusHeight(currentNode));
                     }
                 }
 
                 // inserts box data to PDF
-                if (currentNode.isBox())
+                if (tree.isReplaced(currentNode))
                 {
-                    ReplacedBox box = currentNode.getBox();
-                    insertImg(box, i, currentNode.getTreeEq().getPlusOffset(), currentNode.getTreeEq().getPlusHeight(),
-                            pdfFilter, isBorderRad, borRad);
+                    ReplacedBox box = tree.getReplaced(currentNode);
+                    insertImg(box, i, tree.getPlusOffset(currentNode), tree.getPlusHeight(currentNode),
+                            state.filter, state.isBorderRad, state.borRad);
                 }
                 
                 // inserts list markers
-                if (currentNode.isItem())
+                if (tree.isItem(currentNode))
                 {
-                    insertMarker(currentNode.getItem(), i, currentNode.getTreeEq().getPlusOffset(), currentNode.getTreeEq().getPlusHeight());
+                    insertMarker(tree.getItem(currentNode), i, tree.getPlusOffset(currentNode), tree.getPlusHeight(currentNode));
                 }
             }
+
+            // creates the link annotations collected on this page
+            writePageLinksPDFBox();
         }
     }
 
     /**
-     * Creates a filter structure based on the element style.
-     * @param elem the element
-     * @return a filter structure
+     * Finds the images drawn on the rendered pages and starts encoding them on the executor.
+     * The paint state is tracked using {@link PaintState} and the image variants are created
+     * in the same way as in {@link #writeAllElementsToPDF()}, so that the drawing only uses
+     * the encoded images.
      */
-    private Filter createFilter(ElementBox elem)
+    private void prepareImages(int rangeFirst, int rangeLast, boolean partial, float rangeTop, float rangeBottom)
     {
-        TermList values = elem.getStyle().getValue(TermList.class, "filter");
-        int n = 0;
-        String[] filterType = new String[10];
-        float invert = 0;
-        float grayscale = 0;
-        float opacity = 1;
-        float brightness = 1;
-        for (Term<?> term : values)
+        if (executor == null)
+            return;
+        final PaintState state = new PaintState();
+        for (int i = rangeFirst; i <= rangeLast; i++)
         {
-            if (term instanceof TermFunction.Invert)
-            {
-                filterType[n] = "invert";
-                invert = ((TermFunction.Invert) term).getAmount();
-            }
-            else if (term instanceof TermFunction.Brightness)
-            {
-                filterType[n] = "bright";
-                brightness = ((TermFunction.Brightness) term).getAmount();
-            }
-            else if (term instanceof TermFunction.Opacity)
+            for (int node = 0; node < tree.size(); node++)
             {
-                filterType[n] = "opacity";
-                opacity = ((TermFunction.Opacity) term).getAmount();
+                final boolean skipped = partial && isOutsideRange(node, rangeTop, rangeBottom);
+                if (tree.isElem(node))
+                {
+                    // the state is updated by the skipped elements as well
+                    final PaintStyle style = getPaintStyle(node);
+                    state.update(style);
+                    final ElementBox elem = tree.getElem(node);
+                    if (!skipped && elem.getBackgroundImages() != null && elem.getBackgroundImages().size() > 0)
+                    {
+                        prepareBgImages(elem, i, tree.getPlusOffset(node), tree.getPlusHeight(node),
+                                state, style.getTransform() != null);
+                    }
+                }
+                else if (tree.isReplaced(node) && !skipped)
+                {
+                    final ReplacedBox box = tree.getReplaced(node);
+                    final BufferedImage img = getReplacedImage(box);
+                    if (img != null && isImgOnPage(box, img, i, tree.getPlusOffset(node), tree.getPlusHeight(node)))
+                    {
+                        submitImage(createImageVariant(box, img, tree.getPlusHeight(node),
+                                state.filter, state.isBorderRad, state.borRad), state);
+                    }
+                }
             }
-            else if (term instanceof TermFunction.Grayscale)
+        }
+    }
+
+    /**
+     * Starts encoding the background images of an element drawn on the given page.
+     * The same images are chosen as in {@link #insertBgImg}.
+     */
+    private void prepareBgImages(ElementBox elem, int i, float plusOffset, float plusHeight, PaintState state,
+            boolean transf)
+    {
+        if (isBgBitmap(elem, state.isBorderRad, transf))
+        {
+            final ImageVariant variant = createBgBitmapVariant(elem, state.filter, state.isBorderRad, state.borRad);
+            if (variant != null && isBgBitmapOnPage(elem, variant, i, plusOffset, plusHeight))
+                submitImage(variant, state);
+        }
+        else
+        {
+            final BackgroundTiles background = new BackgroundTiles(elem);
+            if (!background.isZeroSize() && isBgOnPage(background.getBounds(), i, plusOffset, plusHeight))
             {
-                filterType[n] = "grayscale";
-                grayscale = 1;
+                for (BackgroundImage img : elem.getBackgroundImages())
+                {
+                    final BufferedImage tile = getBgTile(img);
+                    if (tile != null)
+                        submitImage(createBgTileVariant(tile, state.filter), state);
+                }
             }
-            else
-                filterType[n] = "";
+        }
+    }
 
-            n++;
+    /**
+     * Submits the encoding of an image variant to the executor unless it has been
+     * submitted already.
+     */
+    private void submitImage(ImageVariant variant, PaintState state)
+    {
+        if (!imageTasks.containsKey(variant))
+        {
+            // each task uses its own filter because the filters keep some state
+            final Filter filter = state.createFilter();
+            imageTasks.put(variant, executor.submit(() -> ImageEncoder.encode(prepareImg(variant, filter))));
         }
-        return new Filter(filterType, invert, grayscale, opacity, brightness);
+    }
+
+    /**
+     * Checks whether the node is completely outside of the given vertical range of
+     * the output. The transformed elements and list markers are never considered
+     * to be outside.
+     * @param node the node to check
+     * @param top the top of the range
+     * @param bottom the bottom of the range
+     * @return {@code true} when the node is not visible in the range
+     */
+    private boolean isOutsideRange(int node, float top, float bottom)
+    {
+        float nodeTop, nodeBottom;
+        if (tree.isElem(node))
+        {
+            if (getPaintStyle(node).getTransform() != null)
+                return false;
+            Rectangle bounds = tree.getElem(node).getAbsoluteBorderBounds();
+            nodeTop = bounds.y * resCoef + tree.getPlusOffset(node);
+            nodeBottom = (bounds.y + bounds.height) * resCoef + tree.getPlusOffset(node) + tree.getPlusHeight(node);
+        }
+        else if (tree.isText(node) || tree.isReplaced(node))
+        {
+            nodeTop = tree.getTop(node, resCoef);
+            nodeBottom = tree.getBottom(node, resCoef);
+        }
+        else
+            return false;
+        return nodeBottom < top || nodeTop > bottom;
+    }
+
+    /**
+     * Obtains the paint style of the element stored in the given node. The style
+     * is extracted when it is requested for the first time and then it is reused.
+     * @param node the node containing the element
+     * @return the paint style
+     */
+    private PaintStyle getPaintStyle(int node)
+    {
+        PaintStyle style = tree.getPaintStyle(node);
+        if (style == null)
+        {
+            style = PaintStyle.create(tree.getElem(node), resCoef);
+            tree.setPaintStyle(node, style);
+        }
+        return style;
     }
 
     /**
@@ -1454,6 +1398,8 @@ public class PDFRenderer implements BoxRenderer
      *            represents current element in the TREE structure
      * @param elem
      *            element, which contains transform property
+     * @param style
+     *            the paint style of the element
      * @param i
      *            number of the current page
      * @param transf
@@ -1463,139 +1409,24 @@ public class PDFRenderer implements BoxRenderer
      * @author Hoang Duong Nguyen
      * @throws IOException 
      */
-    private boolean insertTransform(Node recentNode, ElementBox elem, int i, boolean transf) throws IOException
+    private boolean insertTransform(int recentNode, ElementBox elem, PaintStyle style, int i, boolean transf) throws IOException
     {
-        if (elem.isBlock() || elem.isReplaced())
+        final AffineTransform ret = style.getTransform();
+        if (ret != null)
         {
-            CSSDecoder dec = new CSSDecoder(elem.getVisualContext());
-            Rectangle bounds = elem.getAbsoluteContentBounds();
-            // decode the origin
-            float ox, oy;
-            CSSProperty.TransformOrigin origin = elem.getStyle().getProperty("transform-origin");
-            if (origin == CSSProperty.TransformOrigin.list_values)
-            {
-                TermList values = elem.getStyle().getValue(TermList.class, "transform-origin");
-                ox = dec.getLength((TermLengthOrPercent) values.get(0), false, bounds.width / 2, 0, bounds.width);
-                oy = dec.getLength((TermLengthOrPercent) values.get(1), false, bounds.height / 2, 0, bounds.height);
-            }
-            else
-            {
-                ox = bounds.width / 2;
-                oy = bounds.height / 2;
-            }
-
-            float newXY[] = transXYtoPDF(elem, ox * resCoef, oy * resCoef, recentNode.getTreeEq().getPlusOffset(),
-                    recentNode.getTreeEq().getPlusHeight(), i);
-            ox = (int) newXY[0];
-            oy = (int) newXY[1];
-
-            // compute the transformation matrix
-            CSSProperty.Transform trans = elem.getStyle().getProperty("transform");
-
-            if (trans == CSSProperty.Transform.list_values)
-            {
-                boolean transformed = false;
-                AffineTransform ret = new AffineTransform();
-                TermList values = elem.getStyle().getValue(TermList.class, "transform");
-                for (Term<?> term : values)
-                {
-                    if (term instanceof TermFunction.Rotate)
-                    {
-                        final double theta = dec.getAngle(((TermFunction.Rotate) term).getAngle());
-                        ret.rotate(-theta);
-                        transformed = true;
-                    }
-                    else if (term instanceof TermFunction.Scale)
-                    {
-                        float sx = ((TermFunction.Scale) term).getScaleX();
-                        float sy = ((TermFunction.Scale) term).getScaleY();
-                        ret.scale(sx, sy);
-                        transformed = true;
-                    }
-                    else if (term instanceof TermFunction.ScaleX)
-                    {
-                        float sx = ((TermFunction.ScaleX) term).getScale();
-                        ret.scale(sx, 1.0f);
-                        transformed = true;
-                    }
-                    else if (term instanceof TermFunction.ScaleY)
-                    {
-                        float sy = ((TermFunction.ScaleY) term).getScale();
-                        ret.scale(1.0f, sy);
-                        transformed = true;
-                    }
-                    else if (term instanceof TermFunction.Skew)
-                    {
-                        double anx = dec.getAngle(((TermFunction.Skew) term).getSkewX());
-                        double any = dec.getAngle(((TermFunction.Skew) term).getSkewY());
-                        ret.shear(Math.tan(-anx), Math.tan(-any));
-                        transformed = true;
-                    }
-                    else if (term instanceof TermFunction.SkewX)
-                    {
-                        double anx = dec.getAngle(((TermFunction.SkewX) term).getSkew());
-                        ret.shear(Math.tan(-anx), 0.0);
-                        transformed = true;
-                    }
-                    else if (term instanceof TermFunction.SkewY)
-                    {
-                        double any = dec.getAngle(((TermFunction.SkewY) term).getSkew());
-                        ret.shear(0.0, -any);
-                        transformed = true;
-                    }
-                    else if (term instanceof TermFunction.Matrix)
-                    {
-                        float[] vals = new float[6];
-                        vals = ((TermFunction.Matrix) term).getValues();
-                        vals[1] = -vals[1]; // must be inverted because of
-                                            // coordinate system in PDF
-                        vals[2] = -vals[2];
-                        vals[5] = -vals[5];
-                        ret.concatenate(new AffineTransform(vals));
-                        transformed = true;
-                    }
-                    else if (term instanceof TermFunction.Translate)
-                    {
-                        float tx = dec.getLength(((TermFunction.Translate) term).getTranslateX(), false, 0, 0,
-                                bounds.width);
-                        float ty = dec.getLength(((TermFunction.Translate) term).getTranslateY(), false, 0, 0,
-                                bounds.height);
-                        ret.translate(tx * resCoef, -ty * resCoef); // - because of the different coordinate system in
-                                                                    // PDF; * rescoef because of the page ratio
-                        transformed = true;
-                    }
-                    else if (term instanceof TermFunction.TranslateX)
-                    {
-                        float tx = dec.getLength(((TermFunction.TranslateX) term).getTranslate(), false, 0, 0,
-                                bounds.width);
-                        ret.translate(tx * resCoef, 0.0);
-                        transformed = true;
-                    }
-                    else if (term instanceof TermFunction.TranslateY)
-                    {
-                        float ty = dec.getLength(((TermFunction.TranslateY) term).getTranslate(), false, 0, 0,
-                                bounds.height);
-                        ret.translate(0.0, -ty * resCoef);
-                        transformed = true;
-                    }
-                }
-
-                if (transformed)
-                {
-                    if (transf)
-                        content.restoreGraphicsState();
-                    content.saveGraphicsState();
-                    drawTransformPDF(ret, ox, oy);
-                    return true;
-                }
-                else
-                    return false; // no transformation applied
-            }
-            else
-                return false; // no transformation declared
+            float newXY[] = transXYtoPDF(elem, style.getOriginX() * resCoef, style.getOriginY() * resCoef,
+                    tree.getPlusOffset(recentNode), tree.getPlusHeight(recentNode), i);
+            float ox = (int) newXY[0];
+            float oy = (int) newXY[1];
+
+            if (transf)
+                content.restoreGraphicsState();
+            content.saveGraphicsState();
+            drawTransformPDF(ret, ox, oy);
+            return true;
         }
         else
-            return false; // not applicable for this element type
+            return false; // no transformation declared or not applicable for this element type
     }
 
     /**
@@ -1624,44 +1455,310 @@ public class PDFRenderer implements BoxRenderer
     }
 
     /**
-     * Draws image gained from <img> tag to OUTPUT
+     * Draws image gained from <img> tag to OUTPUT
+     * @throws IOException 
+     */
+    private void insertImg(ReplacedBox box, int i, float plusOffset, float plusHeight, Filter filter,
+            boolean isBorderRad, BorderRadius borRad) throws IOException
+    {
+        final BufferedImage img = getReplacedImage(box);
+        if (img != null && isImgOnPage(box, img, i, plusOffset, plusHeight))
+        {
+            // calculates resized coordinates in CSSBox form
+            Rectangle cb = ((Box) box).getAbsoluteContentBounds();
+            float startX = cb.x * resCoef;
+            float startY = (cb.y * resCoef + plusOffset + plusHeight) - i * pageFormat.getHeight(); // y position in the page
+            float width = (float) cb.getWidth() * resCoef;
+            float height = (float) cb.getHeight() * resCoef + plusHeight;
+            final ImageVariant variant = createImageVariant(box, img, plusHeight, filter, isBorderRad, borRad);
+            // inserts image
+            insertImagePDFBox(getPreparedImage(variant, filter), startX, startY, width, height);
+        }
+    }
+
+    /**
+     * Obtains the bitmap image of a replaced box.
+     * @return the image or {@code null} when the box does not contain a bitmap image
+     */
+    private BufferedImage getReplacedImage(ReplacedBox box)
+    {
+        ReplacedContent cont = box.getContentObj();
+        if (cont instanceof ReplacedImage)
+        {
+            final ReplacedImage rimg = (ReplacedImage) cont;
+            if (rimg.getImage() instanceof BitmapImage)
+                return ((BitmapImage) rimg.getImage()).getBufferedImage();
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether a replaced box image is visible on the given page.
+     */
+    private boolean isImgOnPage(ReplacedBox box, BufferedImage img, int i, float plusOffset, float plusHeight)
+    {
+        float pageStart = i * pageFormat.getHeight();
+        float pageEnd = (i + 1) * pageFormat.getHeight();
+        Rectangle cb = ((Box) box).getAbsoluteContentBounds();
+        return cb.y * resCoef < pageEnd
+                && (cb.y + img.getHeight()) * resCoef + plusHeight + plusOffset > pageStart;
+    }
+
+    /**
+     * Creates the description of the image drawn for a replaced box.
+     */
+    private ImageVariant createImageVariant(ReplacedBox box, BufferedImage img, float plusHeight, Filter filter,
+            boolean isBorderRad, BorderRadius borRad)
+    {
+        Rectangle cb = ((Box) box).getAbsoluteContentBounds();
+        float width = cb.getWidth() * resCoef;
+        float height = cb.getHeight() * resCoef + plusHeight;
+        float radiusX = 0, radiusY = 0;
+        if (isBorderRad)
+        {
+            radiusX = Math.max(Math.max(borRad.topLeftX, borRad.topRightX),
+                    Math.max(borRad.botLeftX, borRad.botRightX));
+            radiusY = Math.max(Math.max(borRad.topLeftY, borRad.topRightY),
+                    Math.max(borRad.botLeftY, borRad.botRightY));
+        }
+        return new ImageVariant(ImageKind.REPLACED, null, img, width, height, filter, isBorderRad, radiusX, radiusY);
+    }
+
+    /**
+     * Obtains the encoded image for the given image variant. The images encoded in advance
+     * are used when available, the remaining images are encoded on demand. Each variant is
+     * stored in the document only once.
+     */
+    private PDImageXObject getPreparedImage(ImageVariant variant, Filter filter) throws IOException
+    {
+        PDImageXObject ret = preparedImages.get(variant);
+        if (ret == null)
+        {
+            final Future<ImageEncoder.EncodedImage> task = imageTasks.remove(variant);
+            final ImageEncoder.EncodedImage encoded;
+            if (task != null)
+            {
+                try
+                {
+                    encoded = task.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof IOException)
+                        throw (IOException) e.getCause();
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+            else
+                encoded = ImageEncoder.encode(prepareImg(variant, filter));
+            ret = encoded.createImage(doc);
+            preparedImages.put(variant, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Creates the image to be embedded for the given image variant: the source image
+     * is downsampled, filtered and the rounded corners are applied. The source image
+     * is not modified. The method may be called from any thread.
+     */
+    private BufferedImage prepareImg(ImageVariant variant, Filter filter)
+    {
+        if (variant.kind == ImageKind.BG_BITMAP)
+            return createBgBitmap(variant, filter);
+        if (variant.kind == ImageKind.BG_TILE)
+        {
+            // the filters modify the image
+            return (filter.filterType != null) ? filter.filterImg(copyImg(variant.source)) : variant.source;
+        }
+        BufferedImage img = downsampleImg(variant.source, variant.width, variant.height);
+        if (filter.filterType != null)
+        {
+            // the filters modify the image, the source and the downsampled images are shared
+            img = filter.filterImg(copyImg(img));
+        }
+        if (variant.rounded)
+        {
+            // the radius is given in the original image pixels
+            final float imgScale = (float) img.getWidth() / variant.source.getWidth();
+            img = makeImgRadiusCorner(img, variant.radiusX * imgScale, variant.radiusY * imgScale);
+        }
+        return img;
+    }
+
+    /**
+     * Draws element background image to OUTPUT
+     * @throws IOException 
+     */
+    private void insertBgImg(ElementBox elem, int i, float plusOffset, float plusHeight, Filter filter,
+            boolean isBorderRad, BorderRadius borRad, boolean transf) throws IOException
+    {
+        if (elem.getBackgroundImages() != null)
+        {
+            if (isBgBitmap(elem, isBorderRad, transf))
+                insertBgBitmap(elem, i, plusOffset, plusHeight, filter, isBorderRad, borRad);
+            else
+                insertBgTiles(elem, i, plusOffset, plusHeight, filter);
+        }
+    }
+
+    /**
+     * Checks whether the element background should be drawn as a single bitmap instead of
+     * the separate image tiles. The rounded corners are applied to a bitmap of the whole
+     * background and the pattern space is not affected by the element transformations;
+     * the tiles are only created for the bitmap images.
+     */
+    private boolean isBgBitmap(ElementBox elem, boolean isBorderRad, boolean transf)
+    {
+        if (isBorderRad || transf)
+            return true;
+        for (BackgroundImage img : elem.getBackgroundImages())
+        {
+            if (img instanceof BackgroundImageImage && !(((BackgroundImageImage) img).getImage() instanceof BitmapImage))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Obtains the tile image of a background image.
+     * @return the image or {@code null} when the background image is not a bitmap image
+     */
+    private BufferedImage getBgTile(BackgroundImage img)
+    {
+        if (img instanceof BackgroundImageImage && ((BackgroundImageImage) img).getImage() instanceof BitmapImage)
+            return ((BitmapImage) ((BackgroundImageImage) img).getImage()).getBufferedImage();
+        return null;
+    }
+
+    /**
+     * Checks whether the background bounds are visible on the given page.
+     */
+    private boolean isBgOnPage(Rectangle bounds, int i, float plusOffset, float plusHeight)
+    {
+        final float pageStart = i * pageFormat.getHeight();
+        final float pageEnd = (i + 1) * pageFormat.getHeight();
+        return bounds.y * resCoef + plusOffset < pageEnd
+                && (bounds.y + bounds.height) * resCoef + plusOffset + plusHeight > pageStart;
+    }
+
+    /**
+     * Checks whether the background bitmap of an element is visible on the given page.
+     */
+    private boolean isBgBitmapOnPage(ElementBox elem, ImageVariant variant, int i, float plusOffset, float plusHeight)
+    {
+        final float pageStart = i * pageFormat.getHeight();
+        final float pageEnd = (i + 1) * pageFormat.getHeight();
+        return elem.getAbsoluteContentY() * resCoef + plusOffset < pageEnd
+                && (elem.getAbsoluteContentY() + variant.height) * resCoef + plusOffset + plusHeight > pageStart;
+    }
+
+    /**
+     * Draws element background images to OUTPUT as a single bitmap of the element size.
+     * The bitmap is stored only once for each element and filter and it is shared by
+     * all the pages where the element is drawn; it is rasterized only when it has not
+     * been stored or encoded in advance yet.
+     * @throws IOException 
+     */
+    private void insertBgBitmap(ElementBox elem, int i, float plusOffset, float plusHeight, Filter filter,
+            boolean isBorderRad, BorderRadius borRad) throws IOException
+    {
+        final ImageVariant variant = createBgBitmapVariant(elem, filter, isBorderRad, borRad);
+        if (variant != null && isBgBitmapOnPage(elem, variant, i, plusOffset, plusHeight))
+        {
+            // calculates resized coordinates in CSSBox form
+            Rectangle bb = elem.getAbsoluteBorderBounds();
+            float startX = bb.x * resCoef;
+            float startY = bb.y * resCoef + plusOffset - i * pageFormat.getHeight();
+            float width = variant.width * resCoef;
+            float height = variant.height * resCoef;
+
+            // correction of long backgrounds
+            if (height > 5 * plusHeight) height += plusHeight;
+
+            // inserts image
+            insertImagePDFBox(getPreparedImage(variant, filter), startX, startY, width, height);
+        }
+    }
+
+    /**
+     * Creates the description of the background bitmap of an element. The bitmap size
+     * is given by the background bounds (see {@link BackgroundBitmap}).
+     * @return the bitmap variant or {@code null} when the background has a zero size
+     */
+    private ImageVariant createBgBitmapVariant(ElementBox elem, Filter filter, boolean isBorderRad, BorderRadius borRad)
+    {
+        final ElementBackground background = new ElementBackground(elem);
+        if (background.isZeroSize())
+            return null;
+        float radiusX = 0, radiusY = 0;
+        if (isBorderRad)
+        { // if border radius is set
+            radiusX = Math.max(Math.max(borRad.topLeftX, borRad.topRightX),
+                    Math.max(borRad.botLeftX, borRad.botRightX));
+            radiusY = Math.max(Math.max(borRad.topLeftY, borRad.topRightY),
+                    Math.max(borRad.botLeftY, borRad.botRightY));
+        }
+        return new ImageVariant(ImageKind.BG_BITMAP, elem, null, Math.round(background.getBounds().width),
+                Math.round(background.getBounds().height), filter, isBorderRad, radiusX, radiusY);
+    }
+
+    /**
+     * Rasterizes the background images of an element to a single bitmap and applies
+     * the filter and the rounded corners of the given variant. The method may be called
+     * from any thread.
+     */
+    private BufferedImage createBgBitmap(ImageVariant variant, Filter filter)
+    {
+        final BackgroundBitmap bitmap = new BackgroundBitmap(variant.owner);
+        for (BackgroundImage img : variant.owner.getBackgroundImages())
+        {
+            if (img instanceof BackgroundImageImage)
+            {
+                bitmap.addBackgroundImage((BackgroundImageImage) img);
+            }
+        }
+        BufferedImage img = filter.filterImg(bitmap.getBufferedImage());
+        if (variant.rounded)
+            img = makeImgRadiusCorner(img, variant.radiusX * 2, variant.radiusY * 2);
+        return img;
+    }
+
+    /**
+     * Draws element background images to OUTPUT. Each image is stored only once in its
+     * original size and the repeated images are painted using a tiling pattern.
      * @throws IOException 
      */
-    private void insertImg(ReplacedBox box, int i, float plusOffset, float plusHeight, Filter filter,
-            boolean isBorderRad, BorderRadius borRad) throws IOException
+    private void insertBgTiles(ElementBox elem, int i, float plusOffset, float plusHeight, Filter filter) throws IOException
     {
-        ReplacedContent cont = box.getContentObj();
-        if (cont != null)
+        final BackgroundTiles background = new BackgroundTiles(elem);
+        if (background.isZeroSize())
+            return;
+        final Rectangle bounds = background.getBounds();
+        if (!isBgOnPage(bounds, i, plusOffset, plusHeight))
+            return;
+
+        // correction of long backgrounds
+        final float extraHeight = (bounds.height * resCoef > 5 * plusHeight) ? plusHeight : 0;
+
+        for (BackgroundImage img : elem.getBackgroundImages())
         {
-            if (cont instanceof ReplacedImage)
+            final BufferedImage tile = getBgTile(img);
+            if (tile != null)
             {
-                final ReplacedImage rimg = (ReplacedImage) cont;
-                if (rimg.getImage() != null && rimg.getImage() instanceof BitmapImage)
+                final BackgroundImageImage bgimg = (BackgroundImageImage) img;
+                final Rectangle pos = background.getTargetPosition(bgimg);
+                if (pos.width > 0 && pos.height > 0)
                 {
-                    BufferedImage img = ((BitmapImage) rimg.getImage()).getBufferedImage();
-                    float pageStart = i * pageFormat.getHeight();
-                    float pageEnd = (i + 1) * pageFormat.getHeight();
-    
-                    Rectangle cb = ((Box) box).getAbsoluteContentBounds();
-                    if (img != null && cb.y * resCoef < pageEnd
-                            && (cb.y + img.getHeight()) * resCoef + plusHeight + plusOffset > pageStart)
+                    final BackgroundTile placement = BackgroundTile.create(bounds, background.getClipped(), pos,
+                            bgimg.isRepeatX(), bgimg.isRepeatY(), resCoef, pageFormat.getHeight(),
+                            plusOffset - i * pageFormat.getHeight(), extraHeight);
+                    if (placement != null)
                     {
-                        img = filter.filterImg(img);
-                        // calculates resized coordinates in CSSBox form
-                        float startX = cb.x * resCoef;
-                        float startY = (cb.y * resCoef + plusOffset + plusHeight) - i * pageFormat.getHeight(); // y position in the page
-                        float width = (float) cb.getWidth() * resCoef;
-                        float height = (float) cb.getHeight() * resCoef + plusHeight;
-                        if (isBorderRad)
-                        { // if border radius is set
-                            float radiusX = Math.max(Math.max(borRad.topLeftX, borRad.topRightX),
-                                    Math.max(borRad.botLeftX, borRad.botRightX));
-                            float radiusY = Math.max(Math.max(borRad.topLeftY, borRad.topRightY),
-                                    Math.max(borRad.botLeftY, borRad.botRightY));
-                            img = makeImgRadiusCorner(img, radiusX, radiusY);
-                        }
-                        // inserts image
-                        insertImagePDFBox(img, startX, startY, width, height);
+                        final PDImageXObject ximage = getPreparedImage(createBgTileVariant(tile, filter), filter);
+                        final PDTilingPattern pattern = placement.isRepeated() ? getBgTilePattern(ximage, placement) : null;
+                        placement.draw(content, page.getResources(), ximage, pattern);
                     }
                 }
             }
@@ -1669,58 +1766,85 @@ public class PDFRenderer implements BoxRenderer
     }
 
     /**
-     * Draws element background image to OUTPUT
-     * @throws IOException 
+     * Creates the description of a background image tile. Each tile is stored only once
+     * in its original size for each combination of the filter values used in the document.
      */
-    private void insertBgImg(ElementBox elem, int i, float plusOffset, float plusHeight, Filter filter,
-            boolean isBorderRad, BorderRadius borRad) throws IOException
+    private ImageVariant createBgTileVariant(BufferedImage tile, Filter filter)
     {
-        if (elem.getBackgroundImages() != null)
-        {
-            final BackgroundBitmap bitmap = new BackgroundBitmap(elem);
-            for (BackgroundImage img : elem.getBackgroundImages())
-            {
-                if (img instanceof BackgroundImageImage)
-                {
-                    bitmap.addBackgroundImage((BackgroundImageImage) img);
-                }
-            }
-            if (bitmap.getBufferedImage() != null)
-            {
-                //final Rectangle bg = elem.getAbsoluteBorderBounds();
-                //g.drawImage(bitmap.getBufferedImage(), Math.round(bg.x), Math.round(bg.y), null);
-                BufferedImage img = bitmap.getBufferedImage();
-                float pageStart = i * pageFormat.getHeight();
-                float pageEnd = (i + 1) * pageFormat.getHeight();
-                if (img != null && elem.getAbsoluteContentY() * resCoef + plusOffset < pageEnd
-                        && (elem.getAbsoluteContentY() + img.getHeight()) * resCoef + plusOffset + plusHeight > pageStart)
-                {
-                    img = filter.filterImg(img);
-                    // calculates resized coordinates in CSSBox form
-                    Rectangle bb = elem.getAbsoluteBorderBounds();
-                    float startX = bb.x * resCoef;
-                    float startY = bb.y * resCoef + plusOffset - i * pageFormat.getHeight();
-                    float width = img.getWidth() * resCoef;
-                    float height = img.getHeight() * resCoef;
-
-                    // correction of long backgrounds
-                    if (height > 5 * plusHeight) height += plusHeight;
-
-                    // if corner radius is set
-                    if (isBorderRad)
-                    { // if border radius is set
-                        float radiusX = Math.max(Math.max(borRad.topLeftX, borRad.topRightX),
-                                Math.max(borRad.botLeftX, borRad.botRightX));
-                        float radiusY = Math.max(Math.max(borRad.topLeftY, borRad.topRightY),
-                                Math.max(borRad.botLeftY, borRad.botRightY));
-                        img = makeImgRadiusCorner(img, radiusX * 2, radiusY * 2);
-                    }
+        return new ImageVariant(ImageKind.BG_TILE, null, tile, tile.getWidth(), tile.getHeight(), filter, false, 0, 0);
+    }
 
-                    // inserts image
-                    insertImagePDFBox(img, startX, startY, width, height);
-                }
-            }
+    /**
+     * Obtains the tiling pattern that repeats the given image for the given tile placement.
+     * The patterns are shared by all the backgrounds with the same tile grid.
+     */
+    private PDTilingPattern getBgTilePattern(PDImageXObject ximage, BackgroundTile placement) throws IOException
+    {
+        final TilingKey key = new TilingKey(ximage, placement.getTileWidth(), placement.getTileHeight(),
+                placement.getPhaseX(), placement.getPhaseY());
+        PDTilingPattern pattern = bgTilePatterns.get(key);
+        if (pattern == null)
+        {
+            pattern = placement.createPattern(ximage);
+            bgTilePatterns.put(key, pattern);
         }
+        return pattern;
+    }
+
+    /**
+     * Reduces the image resolution when the image is drawn in a smaller size than its
+     * pixel size allows for the target image resolution.
+     * @param image the source image
+     * @param width the drawn image width in points
+     * @param height the drawn image height in points
+     * @return the downsampled image or the source image when no downsampling is necessary.
+     * The downsampled images are shared by all the uses of the same source image in the same
+     * size and they must not be modified.
+     */
+    private BufferedImage downsampleImg(BufferedImage image, float width, float height)
+    {
+        if (imageResolution <= 0)
+            return image;
+        // the required size in pixels for the given resolution
+        final float scale = Math.max(width * imageResolution / 72f / image.getWidth(),
+                height * imageResolution / 72f / image.getHeight());
+        if (scale >= 1.0f)
+            return image;
+        final int w = Math.max(1, (int) Math.ceil(image.getWidth() * scale));
+        final int h = Math.max(1, (int) Math.ceil(image.getHeight() * scale));
+        return downsampledImages.computeIfAbsent(image, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(((long) w << 32) | h, k -> scaleImg(image, w, h));
+    }
+
+    /**
+     * Scales the image down to the given size.
+     */
+    private static BufferedImage scaleImg(BufferedImage image, int w, int h)
+    {
+        BufferedImage ret = image;
+        // halves the size in steps for a smoother result, then scales to the final size
+        do
+        {
+            final int stepW = Math.max(w, ret.getWidth() / 2);
+            final int stepH = Math.max(h, ret.getHeight() / 2);
+            final BufferedImage step = new BufferedImage(stepW, stepH,
+                    image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+            final Graphics2D g = step.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(ret, 0, 0, stepW, stepH, null);
+            g.dispose();
+            ret = step;
+        } while (ret.getWidth() != w || ret.getHeight() != h);
+        return ret;
+    }
+
+    /**
+     * Creates a copy of the image.
+     */
+    private static BufferedImage copyImg(BufferedImage image)
+    {
+        return new BufferedImage(image.getColorModel(), image.copyData(null), image.isAlphaPremultiplied(), null);
     }
 
     /**
@@ -1730,7 +1854,7 @@ public class PDFRenderer implements BoxRenderer
      * @returns 0 for inserted OK, -1 for exception occurs and 1 for border out
      *          of page
      */
-    private void drawBorder(ElementBox elem, int i, float plusOffset, float plusHeight, boolean isBorderRad,
+    private void drawBorder(ElementBox elem, PaintStyle style, int i, float plusOffset, float plusHeight, boolean isBorderRad,
             BorderRadius borRad) throws IOException
     {
         final LengthSet border = elem.getBorder();
@@ -1796,7 +1920,7 @@ public class PDFRenderer implements BoxRenderer
                         borderTopSize == 0 ? 0 : borderTopSize + 1, borderRightSize == 0 ? 0 : borderRightSize + 1,
                         borderBottomSize == 0 ? 0 : borderBottomSize + 1, borderLeftSize == 0 ? 0 : borderLeftSize + 1,
                         borRad);
-                drawBorderRadius(elem, borderTopSize, borderRightSize, borderBottomSize, borderLeftSize, borRad);
+                drawBorderRadius(style, borderTopSize, borderRightSize, borderBottomSize, borderLeftSize, borRad);
             }
             else
             {
@@ -1807,7 +1931,7 @@ public class PDFRenderer implements BoxRenderer
                     bY = border_y - borderBottomSize - paddingBottom;
                     bWidth = borderLeftSize;
                     bHeight = elemHeight + borderTopSize + borderBottomSize + paddingTop + paddingBottom;
-                    drawRectanglePDFBox(borderLeftSize, getBorderColor(elem, "left"), bX, bY, bWidth, bHeight);
+                    drawRectanglePDFBox(borderLeftSize, style.getBorderLeftColor(), bX, bY, bWidth, bHeight);
                 }
 
                 // right border
@@ -1817,7 +1941,7 @@ public class PDFRenderer implements BoxRenderer
                     bY = border_y - borderBottomSize - paddingBottom;
                     bWidth = borderRightSize;
                     bHeight = elemHeight + borderTopSize + borderBottomSize + paddingTop + paddingBottom;
-                    drawRectanglePDFBox(borderRightSize, getBorderColor(elem, "right"), bX, bY, bWidth, bHeight);
+                    drawRectanglePDFBox(borderRightSize, style.getBorderRightColor(), bX, bY, bWidth, bHeight);
                 }
 
                 // top border
@@ -1827,7 +1951,7 @@ public class PDFRenderer implements BoxRenderer
                     bY = border_y + elemHeight + paddingTop;
                     bWidth = elemWidth + borderLeftSize + borderRightSize + paddingLeft + paddingRight;
                     bHeight = borderTopSize;
-                    drawRectanglePDFBox(borderTopSize, getBorderColor(elem, "top"), bX, bY, bWidth, bHeight);
+                    drawRectanglePDFBox(borderTopSize, style.getBorderTopColor(), bX, bY, bWidth, bHeight);
                 }
 
                 // bottom border
@@ -1837,7 +1961,7 @@ public class PDFRenderer implements BoxRenderer
                     bY = border_y - borderBottomSize - paddingBottom;
                     bWidth = elemWidth + borderLeftSize + borderRightSize + paddingLeft + paddingRight;
                     bHeight = borderBottomSize;
-                    drawRectanglePDFBox(borderBottomSize, getBorderColor(elem, "bottom"), bX, bY, bWidth, bHeight);
+                    drawRectanglePDFBox(borderBottomSize, style.getBorderBottomColor(), bX, bY, bWidth, bHeight);
                 }
             }
         }
@@ -1927,8 +2051,8 @@ public class PDFRenderer implements BoxRenderer
      * 
      * @author Hoang Duong Nguyen
      * @returns 0 for inserted OK, -1 for exception occurs
-     * @param elem
-     *            element with border-radius property
+     * @param style
+     *            paint style of the element with border-radius property
      * @param bTopSize
      *            line width of top border side
      * @param bRightSize
@@ -1941,14 +2065,14 @@ public class PDFRenderer implements BoxRenderer
      *            class, which contains border radiuses of each corner
      * @throws IOException 
      */
-    private void drawBorderRadius(ElementBox elem, float bTopSize, float bRightSize, float bBotSize, float bLeftSize,
+    private void drawBorderRadius(PaintStyle style, float bTopSize, float bRightSize, float bBotSize, float bLeftSize,
             BorderRadius borRad) throws IOException
     {
         float bezier = 0.551915024494f;
         if (bTopSize != 0)
         { // drawing top border
             content.setLineWidth(bTopSize);
-            setStrokingColor(getBorderColor(elem, "top"));
+            setStrokingColor(style.getBorderTopColor());
             content.moveTo(ax, ay);
             content.curveTo1((ax + bx) / 2, (ay + by) / 2, bx, by);
             content.curveTo(bx + bezier * borRad.topRightX, by, cx, cy + bezier * borRad.topRightY, cx, cy);
@@ -1957,7 +2081,7 @@ public class PDFRenderer implements BoxRenderer
         if (bRightSize != 0)
         { // drawing right border
             content.setLineWidth(bRightSize);
-            setStrokingColor(getBorderColor(elem, "right"));
+            setStrokingColor(style.getBorderRightColor());
             content.moveTo(cx, cy);
             content.curveTo1((cx + dx) / 2, (cy + dy) / 2, dx, dy);
             content.curveTo(dx, dy - bezier * borRad.botRightY, ex + bezier * borRad.botRightX, ey, ex, ey);
@@ -1966,7 +2090,7 @@ public class PDFRenderer implements BoxRenderer
         if (bBotSize != 0)
         { // drawing bot border
             content.setLineWidth(bBotSize);
-            setStrokingColor(getBorderColor(elem, "bottom"));
+            setStrokingColor(style.getBorderBottomColor());
             content.moveTo(ex, ey);
             content.curveTo1((ex + fx) / 2, (ey + fy) / 2, fx, fy);
             content.curveTo(fx - bezier * borRad.botLeftX, fy, gx, gy - bezier * borRad.botLeftY, gx, gy);
@@ -1975,7 +2099,7 @@ public class PDFRenderer implements BoxRenderer
         if (bLeftSize != 0)
         { // drawing left border
             content.setLineWidth(bLeftSize);
-            setStrokingColor(getBorderColor(elem, "left"));
+            setStrokingColor(style.getBorderLeftColor());
             content.moveTo(gx, gy);
             content.curveTo1((gx + hx) / 2, (gy + hy) / 2, hx, hy);
             content.curveTo(hx, hy + bezier * borRad.topLeftY, ax - bezier * borRad.topLeftX, ay, ax, ay);
@@ -2082,34 +2206,12 @@ public class PDFRenderer implements BoxRenderer
             writeTextByWords(startX, startY, text, font, fontSize, isUnderlined, isBold, letterSpacing, leading);
         
         // render links
-        String href = getLinkURL(text);
-        if (href != null)
+        final Element anchor = getAnchorElement(text);
+        if (anchor != null)
         {
-            URL base = text.getViewport().getFactory().getBaseURL();
-            URL url = null;
-            try {
-                url = new URL(base, href);
-            } catch (MalformedURLException e) {
-            }
-            
-            PDAnnotationLink link = new PDAnnotationLink();
-            PDActionURI actionURI = new PDActionURI();
-            actionURI.setURI(url != null ? url.toString() : href);
-            link.setAction(actionURI);
-            
-            PDBorderStyleDictionary borderULine = new PDBorderStyleDictionary();
-            borderULine.setStyle(PDBorderStyleDictionary.STYLE_UNDERLINE);
-            borderULine.setWidth(0);
-            link.setBorderStyle(borderULine);
-            
             final float sy = pageFormat.getHeight() - startY;
-            PDRectangle pdRectangle = new PDRectangle();
-            pdRectangle.setLowerLeftX(startX);
-            pdRectangle.setLowerLeftY(sy - text.getContentHeight() * resCoef);
-            pdRectangle.setUpperRightX(startX + text.getContentWidth() * resCoef);
-            pdRectangle.setUpperRightY(sy);
-            link.setRectangle(pdRectangle);
-            page.getAnnotations().add(link);
+            addPageLink(anchor, text, startX, sy - text.getContentHeight() * resCoef,
+                    startX + text.getContentWidth() * resCoef, sy);
         }
     }
 
@@ -2147,7 +2249,10 @@ public class PDFRenderer implements BoxRenderer
      */
     private void initContentStream() throws IOException
     {
-        content = new PDPageContentStream(doc, page);
+        if (sharedResources != null)
+            page.setResources(sharedResources);
+        pageContent = PageContent.open(doc, page, false, compressContent);
+        content = pageContent.getStream();
     }
     
     /**
@@ -2156,7 +2261,7 @@ public class PDFRenderer implements BoxRenderer
      */
     private void closeContentStream() throws IOException
     {
-        content.close();
+        pageContent.close();
     }
 
     /**
@@ -2164,10 +2269,15 @@ public class PDFRenderer implements BoxRenderer
      */
     private void insertNPagesPDFBox(int pageCount)
     {
+        pages.clear();
+        pages.add(doc.getPage(0));
         for (int i = 1; i < pageCount; i++)
         {
             PDPage page = new PDPage(pageFormat);
+            if (sharedResources != null)
+                page.setResources(sharedResources);
             doc.addPage(page);
+            pages.add(page);
         }
     }
 
@@ -2177,9 +2287,66 @@ public class PDFRenderer implements BoxRenderer
      */
     private void changeCurrentPageToPDFBox(int i) throws IOException
     {
-        page = (PDPage) doc.getDocumentCatalog().getPages().get(i);
-        content.close();
-        content = new PDPageContentStream(doc, page, PDPageContentStream.AppendMode.APPEND, true, true);
+        page = pages.get(i);
+        pageContent.close();
+        pageContent = PageContent.open(doc, page, true, compressContent);
+        content = pageContent.getStream();
+    }
+
+    /**
+     * Creates the link annotations for all the links collected on the recent page
+     * using PDFBox. All the areas belonging to the same anchor are covered by a single
+     * annotation that uses QuadPoints for the individual areas. When the annotations
+     * per line are enabled, a separate annotation is created for each contiguous run of
+     * the areas instead (typically a single line of the link text).
+     */
+    private void writePageLinksPDFBox() throws IOException
+    {
+        for (PageLink plink : pageLinks)
+        {
+            PDActionURI actionURI = new PDActionURI();
+            actionURI.setURI(plink.url);
+            actionURI.getCOSObject().setDirect(true); // written inside of the annotation
+            
+            if (linkBorderStyle == null)
+            {
+                linkBorderStyle = new PDBorderStyleDictionary();
+                linkBorderStyle.setStyle(PDBorderStyleDictionary.STYLE_UNDERLINE);
+                linkBorderStyle.setWidth(0);
+                linkBorderStyle.getCOSObject().setDirect(true);
+            }
+            
+            if (linkPerLine)
+            {
+                final float[] runs = plink.getRuns();
+                for (int ofs = 0; ofs < runs.length; ofs += 4)
+                {
+                    PDAnnotationLink link = new PDAnnotationLink();
+                    link.setAction(actionURI);
+                    link.setBorderStyle(linkBorderStyle);
+                    link.setRectangle(new PDRectangle(runs[ofs], runs[ofs + 1],
+                            runs[ofs + 2] - runs[ofs], runs[ofs + 3] - runs[ofs + 1]));
+                    page.getAnnotations().add(link);
+                }
+            }
+            else
+            {
+                PDAnnotationLink link = new PDAnnotationLink();
+                link.setAction(actionURI);
+                link.setBorderStyle(linkBorderStyle);
+                PDRectangle pdRectangle = new PDRectangle();
+                pdRectangle.setLowerLeftX(plink.llx);
+                pdRectangle.setLowerLeftY(plink.lly);
+                pdRectangle.setUpperRightX(plink.urx);
+                pdRectangle.setUpperRightY(plink.ury);
+                link.setRectangle(pdRectangle);
+                if (plink.areaCount > 1)
+                    link.setQuadPoints(plink.getQuadPoints());
+                page.getAnnotations().add(link);
+            }
+        }
+        pageLinks.clear();
+        pageLinkIndex.clear();
     }
 
     /**
@@ -2232,17 +2399,13 @@ public class PDFRenderer implements BoxRenderer
     }    
     
     /**
-     * Inserts image to recent PDF page using PDFBox
-     * @throws IOException 
+     * Draws an already created image using PDFBox
+     * @throws IOException
      */
-    private void insertImagePDFBox(BufferedImage img, float x, float y, float width, float height) throws IOException
+    private void insertImagePDFBox(PDImageXObject ximage, float x, float y, float width, float height) throws IOException
     {
         // transform X,Y coordinates to Apache PDFBox format
         y = pageFormat.getHeight() - height - y;
-
-        // PDXObjectImage ximage = new PDPixelMap(doc, img);
-        // content.drawXObject(ximage, x, y, width, height);
-        PDImageXObject ximage = LosslessFactory.createFromImage(doc, img);
         content.drawImage(ximage, x, y, width, height);
     }
 
@@ -2292,6 +2455,8 @@ public class PDFRenderer implements BoxRenderer
     
     /**
      * Writes a text box to PDF by individual words while cosidering the word X offsets available in the text box.
+     * The whole text box is written as a single text object where the individual words are positioned using
+     * the TJ operator.
      * @param x
      * @param y
      * @param text
@@ -2310,8 +2475,57 @@ public class PDFRenderer implements BoxRenderer
         if (words.length > 0)
         {
             final float[][] offsets = text.getWordOffsets(words);
+            // compute the word widths in order to obtain the TJ adjustments
+            final float[] widths = new float[words.length];
+            try
+            {
+                for (int i = 0; i < words.length; i++)
+                    widths[i] = font.getStringWidth(words[i]) / 1000 * fontSize + words[i].length() * letterSpacing;
+            } catch (IllegalArgumentException e) {
+                // some of the words cannot be encoded, write them one by one
+                for (int i = 0; i < words.length; i++)
+                    writeTextPDFBox(x + offsets[i][0] * resCoef, y, words[i], font, fontSize, isUnderlined, isBold, letterSpacing, leading);
+                return;
+            }
+            
+            // create the TJ array
+            final List<Object> tj = new ArrayList<>(words.length * 2);
+            float first = -1; //the first written word X offset
+            float pos = 0; //current position relative to the first word
+            float end = 0; //end of the last word relative to the first word
             for (int i = 0; i < words.length; i++)
-                writeTextPDFBox(x + offsets[i][0] * resCoef, y, words[i], font, fontSize, isUnderlined, isBold, letterSpacing, leading);
+            {
+                if (!words[i].isEmpty())
+                {
+                    final float wx = offsets[i][0] * resCoef;
+                    if (first < 0)
+                        first = wx;
+                    else
+                    {
+                        final float gap = (wx - first) - pos;
+                        if (gap != 0)
+                            tj.add(-gap * 1000 / fontSize);
+                    }
+                    tj.add(words[i]);
+                    pos = (wx - first) + widths[i];
+                    end = pos;
+                }
+            }
+            if (first < 0)
+                return; //nothing to write
+
+            // transform X,Y coordinates to Apache PDFBox format
+            final float tx = x + first;
+            final float ty = pageFormat.getHeight() - y - leading * resCoef;
+            pageContent.beginText();
+            content.setFont(font, fontSize);
+            content.setCharacterSpacing(letterSpacing);
+            content.newLineAtOffset(tx, ty);
+            content.showTextWithPositioning(tj.toArray());
+            pageContent.endText();
+
+            if (isUnderlined)
+                drawUnderlinePDFBox(tx, ty, end, fontSize, isBold);
         }
         else
             writeTextPDFBox(x, y, text.getText(), font, fontSize, isUnderlined, isBold, letterSpacing, leading);
@@ -2336,13 +2550,13 @@ public class PDFRenderer implements BoxRenderer
         // transform X,Y coordinates to Apache PDFBox format
         y = pageFormat.getHeight() - y - leading * resCoef;
 
-        content.beginText();
+        pageContent.beginText();
         content.setFont(font, fontSize);
         content.setCharacterSpacing(letterSpacing);
         content.newLineAtOffset(x, y);
         try
         {
-            content.showText(textToInsert);
+            showTextPDFBox(font, textToInsert);
         } catch (IllegalArgumentException e)
         {
             // NOTE: seems to happen for embedded icon fonts like glyphicons
@@ -2352,24 +2566,51 @@ public class PDFRenderer implements BoxRenderer
             content.showText(" ");
             System.err.println("Error: " + e.getMessage());
         }
-        content.endText();
+        pageContent.endText();
 
         // underlines text if text is set underlined
         if (isUnderlined)
         {
-            content.setLineWidth(1);
             float strokeWidth = font.getStringWidth(textToInsert) / 1000 * fontSize;
-            float lineHeightCalibration = 1f;
-            float yOffset = fontSize / 6.4f;
-            if (isBold)
-            {
-                lineHeightCalibration = 1.5f;
-                yOffset = fontSize / 5.7f;
-            }
+            drawUnderlinePDFBox(x, y, strokeWidth, fontSize, isBold);
+        }
+    }
 
-            content.addRect(x, y - yOffset, strokeWidth, resCoef * lineHeightCalibration);
-            content.fill();
+    /**
+     * Shows a string in the current text object using PDFBox. The encoded string is obtained
+     * from the text encoding cache.
+     * @param font the current font
+     * @param text the string to show
+     * @throws IOException
+     * @throws IllegalArgumentException when some of the characters cannot be encoded by the font
+     */
+    private void showTextPDFBox(PDFont font, String text) throws IOException
+    {
+        pageContent.showEncodedText(textCache.getEncoded(font, text));
+    }
+
+    /**
+     * Draws a text underline to recent PDF page using PDFBox.
+     * @param x the X coordinate of the text start (in PDFBox form)
+     * @param y the Y coordinate of the text baseline (in PDFBox form)
+     * @param strokeWidth the width of the underline
+     * @param fontSize
+     * @param isBold
+     * @throws IOException
+     */
+    private void drawUnderlinePDFBox(float x, float y, float strokeWidth, float fontSize, boolean isBold) throws IOException
+    {
+        content.setLineWidth(1);
+        float lineHeightCalibration = 1f;
+        float yOffset = fontSize / 6.4f;
+        if (isBold)
+        {
+            lineHeightCalibration = 1.5f;
+            yOffset = fontSize / 5.7f;
         }
+
+        content.addRect(x, y - yOffset, strokeWidth, resCoef * lineHeightCalibration);
+        content.fill();
     }
 
     /**
@@ -2380,8 +2621,13 @@ public class PDFRenderer implements BoxRenderer
     private void setStrokingColor(Color color) throws IOException
     {
         content.setStrokingColor(toPDColor(color));
-        PDExtendedGraphicsState graphicsState = new PDExtendedGraphicsState();
-        graphicsState.setStrokingAlphaConstant(color.getAlpha() / 255.0f);
+        PDExtendedGraphicsState graphicsState = strokingAlphaStates[color.getAlpha()];
+        if (graphicsState == null)
+        {
+            graphicsState = new PDExtendedGraphicsState();
+            graphicsState.setStrokingAlphaConstant(color.getAlpha() / 255.0f);
+            strokingAlphaStates[color.getAlpha()] = graphicsState;
+        }
         content.setGraphicsStateParameters(graphicsState);
     }
     
@@ -2393,46 +2639,18 @@ public class PDFRenderer implements BoxRenderer
     private void setNonStrokingColor(Color color) throws IOException
     {
         content.setNonStrokingColor(toPDColor(color));
-        PDExtendedGraphicsState graphicsState = new PDExtendedGraphicsState();
-        graphicsState.setNonStrokingAlphaConstant(color.getAlpha() / 255.0f);
+        PDExtendedGraphicsState graphicsState = nonStrokingAlphaStates[color.getAlpha()];
+        if (graphicsState == null)
+        {
+            graphicsState = new PDExtendedGraphicsState();
+            graphicsState.setNonStrokingAlphaConstant(color.getAlpha() / 255.0f);
+            nonStrokingAlphaStates[color.getAlpha()] = graphicsState;
+        }
         content.setGraphicsStateParameters(graphicsState);
     }
     
     //==================================================================================================
     
-    /**
-     * Returns color of border
-     */
-    private Color getBorderColor(ElementBox elem, String side)
-    {
-        Color clr = null;
-        // gets the color value from CSS property
-        TermColor tclr = elem.getStyle().getSpecifiedValue(TermColor.class, "border-" + side + "-color");
-        CSSProperty.BorderStyle bst = elem.getStyle().getProperty("border-" + side + "-style");
-
-        if (bst != CSSProperty.BorderStyle.HIDDEN && (tclr == null || !tclr.isTransparent()))
-        {
-            if (tclr != null)
-            {
-                clr = tclr.getValue();
-            }
-            if (clr == null)
-            {
-                if (elem.getBgcolor() != null)
-                    clr = elem.getBgcolor();
-                else
-                    clr = new Color(255, 255, 255);
-            }
-        }
-        else
-        {
-            clr = elem.getBgcolor();
-        }
-        if (clr == null)
-            clr = new Color(255, 255, 255);
-        return clr;
-    }
-
     private PDColor toPDColor(Color color)
     {
         if (color == null)
@@ -2444,40 +2662,371 @@ public class PDFRenderer implements BoxRenderer
     
     /**
      * Examines the given element and all its parent elements in order to find the "a" element.
+     * The results are cached for all the elements visited.
      * @param e the child element to start with
      * @return the "a" element found or null if it is not present
      */
-    private org.w3c.dom.Element findAnchorElement(org.w3c.dom.Element e)
+    private Element findAnchorElement(Element e)
     {
+        if (anchorCache.containsKey(e))
+            return anchorCache.get(e); //null value means no anchor
+        
+        final Element ret;
         final String href = e.getAttribute("href");
         if ("a".equalsIgnoreCase(e.getTagName().trim()) && href != null && !href.isEmpty())
-            return e;
+            ret = e;
         else if (e.getParentNode() != null && e.getParentNode().getNodeType() == org.w3c.dom.Node.ELEMENT_NODE)
-            return findAnchorElement((org.w3c.dom.Element) e.getParentNode());
+            ret = findAnchorElement((Element) e.getParentNode());
         else
-            return null;
+            ret = null;
+        anchorCache.put(e, ret);
+        return ret;
     }
 
-    private String getLinkURL(Element elem)
+    /**
+     * Finds the "a" element the given text box belongs to.
+     * @param text the text box
+     * @return the "a" element found or null if it is not present
+     */
+    private Element getAnchorElement(TextBox text)
     {
-        Element el = findAnchorElement(elem);
-        if (el != null)
-            return el.getAttribute("href").trim();
+        org.w3c.dom.Node parent = text.getNode().getParentNode();
+        if (parent != null && parent instanceof Element)
+            return findAnchorElement((Element) parent);
         else
             return null;
     }
-    
-    private String getLinkURL(ElementBox elem)
+
+    /**
+     * Obtains the resolved target URL of the given "a" element. The URL is resolved
+     * only once for each element.
+     * @param anchor the "a" element
+     * @param box a box used for obtaining the base URL
+     * @return the resolved URL
+     */
+    private String getLinkURL(Element anchor, Box box)
     {
-        return getLinkURL(elem.getElement());
+        String ret = anchorURLs.get(anchor);
+        if (ret == null)
+        {
+            final String href = anchor.getAttribute("href").trim();
+            URL base = box.getViewport().getFactory().getBaseURL();
+            URL url = null;
+            try {
+                url = new URL(base, href);
+            } catch (MalformedURLException e) {
+            }
+            ret = (url != null) ? url.toString() : href;
+            anchorURLs.put(anchor, ret);
+        }
+        return ret;
     }
-    
-    private String getLinkURL(TextBox text)
+
+    /**
+     * Adds a link area to the recent page. The areas of the same anchor are joined
+     * to a single link annotation.
+     * @param anchor the "a" element that represents the link
+     * @param box the box that forms the link area
+     * @param llx lower left X coordinate of the area in the PDF form
+     * @param lly lower left Y coordinate of the area in the PDF form
+     * @param urx upper right X coordinate of the area in the PDF form
+     * @param ury upper right Y coordinate of the area in the PDF form
+     */
+    private void addPageLink(Element anchor, Box box, float llx, float lly, float urx, float ury)
     {
-        org.w3c.dom.Node parent = text.getNode().getParentNode();
-        if (parent != null && parent instanceof Element)
-            return getLinkURL((Element) parent);
-        else
-            return null;
+        PageLink plink = pageLinkIndex.get(anchor);
+        if (plink == null)
+        {
+            plink = new PageLink(getLinkURL(anchor, box));
+            pageLinkIndex.put(anchor, plink);
+            pageLinks.add(plink);
+        }
+        plink.addArea(llx, lly, urx, ury);
+    }
+
+    //==================================================================================================
+
+    /**
+     * A link being collected for the recent page. It consists of the link areas of all
+     * the boxes that belong to the same anchor and their union rectangle.
+     */
+    private static class PageLink
+    {
+        private final String url;
+        private float llx, lly, urx, ury;
+        /** The area rectangles stored as (llx, lly, urx, ury) quadruples */
+        private float[] areas;
+        private int areaCount;
+
+        public PageLink(String url)
+        {
+            this.url = url;
+            this.areas = new float[4];
+            this.areaCount = 0;
+        }
+
+        public void addArea(float x1, float y1, float x2, float y2)
+        {
+            if (areaCount == 0)
+            {
+                llx = x1; lly = y1; urx = x2; ury = y2;
+            }
+            else
+            {
+                llx = Math.min(llx, x1); lly = Math.min(lly, y1);
+                urx = Math.max(urx, x2); ury = Math.max(ury, y2);
+            }
+            if ((areaCount + 1) * 4 > areas.length)
+                areas = Arrays.copyOf(areas, areas.length * 2);
+            final int ofs = areaCount * 4;
+            areas[ofs] = x1; areas[ofs + 1] = y1;
+            areas[ofs + 2] = x2; areas[ofs + 3] = y2;
+            areaCount++;
+        }
+
+        /**
+         * Returns the QuadPoints of the areas, i.e. the vertices of each area
+         * in counterclockwise order.
+         */
+        public float[] getQuadPoints()
+        {
+            final float[] ret = new float[areaCount * 8];
+            for (int i = 0; i < areaCount; i++)
+            {
+                final int src = i * 4;
+                final int ofs = i * 8;
+                ret[ofs] = areas[src]; ret[ofs + 1] = areas[src + 1];
+                ret[ofs + 2] = areas[src + 2]; ret[ofs + 3] = areas[src + 1];
+                ret[ofs + 4] = areas[src + 2]; ret[ofs + 5] = areas[src + 3];
+                ret[ofs + 6] = areas[src]; ret[ofs + 7] = areas[src + 3];
+            }
+            return ret;
+        }
+
+        /**
+         * Joins the areas that follow each other on the same line to runs.
+         * @return the run rectangles stored as (llx, lly, urx, ury) quadruples
+         */
+        public float[] getRuns()
+        {
+            final float[] runs = new float[areaCount * 4];
+            int runCount = 0;
+            for (int i = 0; i < areaCount; i++)
+            {
+                final float x1 = areas[i * 4], y1 = areas[i * 4 + 1];
+                final float x2 = areas[i * 4 + 2], y2 = areas[i * 4 + 3];
+                if (runCount > 0)
+                {
+                    final int ofs = (runCount - 1) * 4;
+                    final float gap = y2 - y1; // tolerate the word spacing
+                    if (y1 < runs[ofs + 3] && y2 > runs[ofs + 1] //vertical overlap
+                            && x1 >= runs[ofs] && x1 <= runs[ofs + 2] + gap)
+                    {
+                        runs[ofs + 1] = Math.min(runs[ofs + 1], y1);
+                        runs[ofs + 2] = Math.max(runs[ofs + 2], x2);
+                        runs[ofs + 3] = Math.max(runs[ofs + 3], y2);
+                        continue;
+                    }
+                }
+                final int ofs = runCount * 4;
+                runs[ofs] = x1; runs[ofs + 1] = y1;
+                runs[ofs + 2] = x2; runs[ofs + 3] = y2;
+                runCount++;
+            }
+            return Arrays.copyOf(runs, runCount * 4);
+        }
+    }
+
+    /**
+     * The filter and border radius state used for painting the nodes. The state is given
+     * by the last block or replaced element in the paint order.
+     */
+    private static final class PaintState
+    {
+        public Filter filter = new Filter(null, 0, 0, 1.0f, 1.0f);
+        public boolean isBorderRad = false;
+        public BorderRadius borRad = new BorderRadius();
+        private PaintStyle filterStyle = null;
+
+        /**
+         * Updates the state with an element that is painted or skipped.
+         */
+        public void update(PaintStyle style)
+        {
+            if (style.isBlockOrReplaced())
+            {
+                if (style.isFiltered())
+                {
+                    filter = style.createFilter();
+                    filterStyle = style;
+                }
+                isBorderRad = style.isBorderRadius();
+                borRad = style.getBorderRadius();
+            }
+        }
+
+        /**
+         * Creates a new filter with the current filter values.
+         */
+        public Filter createFilter()
+        {
+            return (filterStyle != null) ? filterStyle.createFilter() : new Filter(null, 0, 0, 1.0f, 1.0f);
+        }
+    }
+
+    /**
+     * The kinds of the embedded images.
+     */
+    private enum ImageKind
+    {
+        /** an image of a replaced box */
+        REPLACED,
+        /** a bitmap of all the background images of an element */
+        BG_BITMAP,
+        /** a single tile of a repeated background image */
+        BG_TILE
+    }
+
+    /**
+     * A description of an embedded image: the source image together with the drawn size
+     * and the effects applied. The variants are compared by the identity of the source
+     * image and the owner element and the values of the remaining properties. The source
+     * image is {@code null} for the background bitmaps that are created from the owner element.
+     */
+    private static final class ImageVariant
+    {
+        public final ImageKind kind;
+        public final ElementBox owner;
+        public final BufferedImage source;
+        public final float width;
+        public final float height;
+        public final boolean rounded;
+        public final float radiusX;
+        public final float radiusY;
+        // a snapshot of the filter values
+        private final String[] filterType;
+        private final float invert, grayscale, bright, opacity;
+
+        public ImageVariant(ImageKind kind, ElementBox owner, BufferedImage source, float width, float height,
+                Filter filter, boolean rounded, float radiusX, float radiusY)
+        {
+            this.kind = kind;
+            this.owner = owner;
+            this.source = source;
+            this.width = width;
+            this.height = height;
+            this.rounded = rounded;
+            this.radiusX = radiusX;
+            this.radiusY = radiusY;
+            if (filter.filterType != null)
+            {
+                this.filterType = filter.filterType.clone();
+                this.invert = filter.invert;
+                this.grayscale = filter.grayscale;
+                this.bright = filter.bright;
+                this.opacity = filter.opacity;
+            }
+            else
+            {
+                this.filterType = null;
+                this.invert = this.grayscale = this.bright = this.opacity = 0;
+            }
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int ret = kind.hashCode();
+            ret = 31 * ret + System.identityHashCode(owner);
+            ret = 31 * ret + System.identityHashCode(source);
+            ret = 31 * ret + Float.floatToIntBits(width);
+            ret = 31 * ret + Float.floatToIntBits(height);
+            ret = 31 * ret + Float.floatToIntBits(radiusX);
+            ret = 31 * ret + Float.floatToIntBits(radiusY);
+            ret = 31 * ret + Arrays.hashCode(filterType);
+            return ret;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) return true;
+            if (!(obj instanceof ImageVariant)) return false;
+            final ImageVariant other = (ImageVariant) obj;
+            return kind == other.kind
+                    && owner == other.owner
+                    && source == other.source
+                    && Float.compare(width, other.width) == 0
+                    && Float.compare(height, other.height) == 0
+                    && rounded == other.rounded
+                    && Float.compare(radiusX, other.radiusX) == 0
+                    && Float.compare(radiusY, other.radiusY) == 0
+                    && Arrays.equals(filterType, other.filterType)
+                    && Float.compare(invert, other.invert) == 0
+                    && Float.compare(grayscale, other.grayscale) == 0
+                    && Float.compare(bright, other.bright) == 0
+                    && Float.compare(opacity, other.opacity) == 0;
+        }
+    }
+
+    /**
+     * A key of a background tiling pattern: the tile image (compared by identity),
+     * the tile size and the phase of the tile grid.
+     */
+    private static final class TilingKey
+    {
+        private final PDImageXObject image;
+        private final float width, height, phaseX, phaseY;
+
+        public TilingKey(PDImageXObject image, float width, float height, float phaseX, float phaseY)
+        {
+            this.image = image;
+            this.width = width;
+            this.height = height;
+            this.phaseX = phaseX;
+            this.phaseY = phaseY;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int ret = System.identityHashCode(image);
+            ret = 31 * ret + Float.floatToIntBits(width);
+            ret = 31 * ret + Float.floatToIntBits(height);
+            ret = 31 * ret + Float.floatToIntBits(phaseX);
+            ret = 31 * ret + Float.floatToIntBits(phaseY);
+            return ret;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (this == obj) return true;
+            if (!(obj instanceof TilingKey)) return false;
+            final TilingKey other = (TilingKey) obj;
+            return image == other.image
+                    && Float.compare(width, other.width) == 0
+                    && Float.compare(height, other.height) == 0
+                    && Float.compare(phaseX, other.phaseX) == 0
+                    && Float.compare(phaseY, other.phaseY) == 0;
+        }
+    }
+
+    /**
+     * The background of an element used for computing the positions of the background
+     * image tiles.
+     */
+    private static class BackgroundTiles extends ElementBackground
+    {
+        public BackgroundTiles(ElementBox owner)
+        {
+            super(owner);
+        }
+
+        public Rectangle getTargetPosition(BackgroundImage image)
+        {
+            return computeTargetImagePosition(image);
+        }
     }
+
 }
@@ -0,0 +1,172 @@
+/*
+ * PageContent.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 19. 10. 2026, 19:05:12 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.contentstream.operator.OperatorName;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfwriter.ContentStreamWriter;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDStream;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+
+/**
+ * A content stream of a page whose output is owned by the renderer. The content is written
+ * using a {@link PDPageContentStream} and the already encoded strings are written to the same
+ * output as string objects followed by the text showing operator. The page contents and
+ * resources are organized in the same way as by the {@link PDPageContentStream} page constructors.
+ *
+ * @author burgetr
+ */
+public class PageContent implements Closeable
+{
+    private static final Operator SHOW_TEXT = Operator.getOperator(OperatorName.SHOW_TEXT);
+
+    private final PDPageContentStream stream;
+    private final ContentStreamWriter writer;
+    private boolean inText;
+
+    private PageContent(PDDocument doc, PDResources resources, OutputStream output) throws IOException
+    {
+        // the form only provides the page resources to the content stream
+        final PDFormXObject holder = new PDFormXObject(new COSStream());
+        holder.setResources(resources);
+        this.stream = new PDPageContentStream(doc, holder, output);
+        this.writer = new ContentStreamWriter(output);
+        this.inText = false;
+    }
+
+    /**
+     * Opens a new content stream of a page.
+     * @param doc the document
+     * @param page the page
+     * @param append {@code true} for appending the stream to the existing page contents;
+     * the existing contents are then enclosed in a saved graphics state. {@code false} for
+     * replacing the existing contents.
+     * @param compress should the stream be compressed?
+     * @return the opened content stream
+     * @throws IOException
+     */
+    public static PageContent open(PDDocument doc, PDPage page, boolean append, boolean compress) throws IOException
+    {
+        final COSName filter = compress ? COSName.FLATE_DECODE : null;
+        final PDStream contents = new PDStream(doc);
+        final boolean reset = append && page.hasContents();
+        if (reset)
+        {
+            final COSBase existing = page.getCOSObject().getDictionaryObject(COSName.CONTENTS);
+            final COSArray array;
+            if (existing instanceof COSArray)
+                array = (COSArray) existing;
+            else
+            {
+                array = new COSArray();
+                array.add(existing);
+            }
+            array.add(contents);
+            final PDStream save = new PDStream(doc);
+            try (OutputStream out = save.createOutputStream(filter))
+            {
+                out.write(OperatorName.SAVE.getBytes(StandardCharsets.US_ASCII));
+                out.write('\n');
+            }
+            array.add(0, save.getCOSObject());
+            page.getCOSObject().setItem(COSName.CONTENTS, array);
+        }
+        else
+            page.setContents(contents);
+
+        PDResources resources = page.getResources();
+        if (resources == null)
+        {
+            resources = new PDResources();
+            page.setResources(resources);
+        }
+        final PageContent ret = new PageContent(doc, resources, contents.createOutputStream(filter));
+        if (reset)
+            ret.getStream().restoreGraphicsState();
+        return ret;
+    }
+
+    /**
+     * Returns the content stream used for writing the page content.
+     */
+    public PDPageContentStream getStream()
+    {
+        return stream;
+    }
+
+    /**
+     * Begins a text object.
+     * @throws IOException
+     */
+    public void beginText() throws IOException
+    {
+        stream.beginText();
+        inText = true;
+    }
+
+    /**
+     * Ends a text object.
+     * @throws IOException
+     */
+    public void endText() throws IOException
+    {
+        stream.endText();
+        inText = false;
+    }
+
+    /**
+     * Shows a string that has already been encoded using the current font.
+     * @param codes the encoded string (see {@link org.apache.pdfbox.pdmodel.font.PDFont#encode(String)})
+     * @throws IOException
+     * @throws IllegalStateException when no text object has been begun
+     */
+    public void showEncodedText(byte[] codes) throws IOException
+    {
+        if (!inText)
+            throw new IllegalStateException("Must call beginText() before showEncodedText()");
+        writer.writeTokens(new COSString(codes), SHOW_TEXT);
+    }
+
+    /**
+     * Closes the content stream and its output.
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException
+    {
+        stream.close();
+    }
+
+}
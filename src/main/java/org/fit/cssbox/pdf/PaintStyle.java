@@ -0,0 +1,430 @@
+/*
+ * PaintStyle.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 18. 10. 2026, 10:12:31 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import java.awt.geom.AffineTransform;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.fit.cssbox.layout.CSSDecoder;
+import org.fit.cssbox.layout.ElementBox;
+import org.fit.cssbox.layout.Rectangle;
+
+import cz.vutbr.web.css.CSSProperty;
+import cz.vutbr.web.css.NodeData;
+import cz.vutbr.web.css.Term;
+import cz.vutbr.web.css.TermColor;
+import cz.vutbr.web.css.TermFunction;
+import cz.vutbr.web.css.TermLengthOrPercent;
+import cz.vutbr.web.css.TermList;
+import cz.vutbr.web.csskit.Color;
+
+/**
+ * An immutable snapshot of the style properties used when painting an element.
+ * The values are extracted from the element style once so that the drawing
+ * code does not have to repeat the property lookups on every page.
+ *
+ * @author burgetr
+ */
+public final class PaintStyle
+{
+    private static final Color WHITE = new Color(255, 255, 255);
+
+    private final boolean blockOrReplaced;
+
+    // filter
+    private final boolean filtered;
+    private final List<String> filterType;
+    private final float invert;
+    private final float grayscale;
+    private final float opacity;
+    private final float brightness;
+
+    // border radius
+    private final boolean borderRadius;
+    private final BorderRadius radius;
+
+    // background image
+    private final CSSProperty.BackgroundImage backgroundImage;
+    private final TermFunction.Gradient gradient;
+
+    // transform
+    private final AffineTransform transform;
+    private final float originX;
+    private final float originY;
+
+    // border colors
+    private final Color borderTopColor;
+    private final Color borderRightColor;
+    private final Color borderBottomColor;
+    private final Color borderLeftColor;
+
+
+    private PaintStyle(ElementBox elem, float resCoef)
+    {
+        final NodeData style = elem.getStyle();
+        blockOrReplaced = elem.isBlock() || elem.isReplaced();
+
+        // filter
+        boolean fltr = false;
+        List<String> ftype = null;
+        float finvert = 0;
+        float fgrayscale = 0;
+        float fopacity = 1;
+        float fbrightness = 1;
+        if (blockOrReplaced && style.getProperty("filter") == CSSProperty.Filter.list_values)
+        {
+            final TermList values = style.getValue(TermList.class, "filter");
+            fltr = true;
+            ftype = new ArrayList<>(values.size());
+            for (Term<?> term : values)
+            {
+                if (term instanceof TermFunction.Invert)
+                {
+                    ftype.add("invert");
+                    finvert = ((TermFunction.Invert) term).getAmount();
+                }
+                else if (term instanceof TermFunction.Brightness)
+                {
+                    ftype.add("bright");
+                    fbrightness = ((TermFunction.Brightness) term).getAmount();
+                }
+                else if (term instanceof TermFunction.Opacity)
+                {
+                    ftype.add("opacity");
+                    fopacity = ((TermFunction.Opacity) term).getAmount();
+                }
+                else if (term instanceof TermFunction.Grayscale)
+                {
+                    ftype.add("grayscale");
+                    fgrayscale = 1;
+                }
+                else
+                    ftype.add("");
+            }
+        }
+        filtered = fltr;
+        filterType = ftype;
+        invert = finvert;
+        grayscale = fgrayscale;
+        opacity = fopacity;
+        brightness = fbrightness;
+
+        // border radius
+        final BorderRadius borRad = new BorderRadius();
+        boolean isBorderRad = false;
+        if (blockOrReplaced)
+        {
+            TermList value1 = style.getValue(TermList.class, "border-top-right-radius");
+            TermList value2 = style.getValue(TermList.class, "border-top-left-radius");
+            TermList value3 = style.getValue(TermList.class, "border-bottom-right-radius");
+            TermList value4 = style.getValue(TermList.class, "border-bottom-left-radius");
+            if (value1 != null || value2 != null || value3 != null || value4 != null)
+            {
+                isBorderRad = true;
+                borRad.setCornerRadius(value2, value1, value4, value3, elem, resCoef);
+            }
+        }
+        borderRadius = isBorderRad;
+        radius = borRad;
+
+        // background image
+        backgroundImage = style.getProperty("background-image");
+        if (backgroundImage == CSSProperty.BackgroundImage.gradient)
+            gradient = style.getValue(TermFunction.Gradient.class, "background-image");
+        else
+            gradient = null;
+
+        // transform
+        float ox = 0, oy = 0;
+        AffineTransform trans = null;
+        if (blockOrReplaced)
+        {
+            final CSSDecoder dec = new CSSDecoder(elem.getVisualContext());
+            final Rectangle bounds = elem.getAbsoluteContentBounds();
+            final CSSProperty.TransformOrigin origin = style.getProperty("transform-origin");
+            if (origin == CSSProperty.TransformOrigin.list_values)
+            {
+                TermList values = style.getValue(TermList.class, "transform-origin");
+                ox = dec.getLength((TermLengthOrPercent) values.get(0), false, bounds.width / 2, 0, bounds.width);
+                oy = dec.getLength((TermLengthOrPercent) values.get(1), false, bounds.height / 2, 0, bounds.height);
+            }
+            else
+            {
+                ox = bounds.width / 2;
+                oy = bounds.height / 2;
+            }
+            if (style.getProperty("transform") == CSSProperty.Transform.list_values)
+                trans = decodeTransform(style.getValue(TermList.class, "transform"), dec, bounds, resCoef);
+        }
+        transform = trans;
+        originX = ox;
+        originY = oy;
+
+        // border colors
+        final Color bgcolor = elem.getBgcolor();
+        borderTopColor = decodeBorderColor(style, bgcolor, "border-top-color", "border-top-style");
+        borderRightColor = decodeBorderColor(style, bgcolor, "border-right-color", "border-right-style");
+        borderBottomColor = decodeBorderColor(style, bgcolor, "border-bottom-color", "border-bottom-style");
+        borderLeftColor = decodeBorderColor(style, bgcolor, "border-left-color", "border-left-style");
+    }
+
+    /**
+     * Extracts the paint style of the given element.
+     * @param elem the element
+     * @param resCoef the resize coefficient of the output page
+     * @return the paint style
+     */
+    public static PaintStyle create(ElementBox elem, float resCoef)
+    {
+        return new PaintStyle(elem, resCoef);
+    }
+
+    /**
+     * Returns true if the element is a block or replaced element (only these are
+     * subject to the filters, border radius and transformations).
+     */
+    public boolean isBlockOrReplaced()
+    {
+        return blockOrReplaced;
+    }
+
+    /**
+     * Returns true if the element has some filter specified.
+     */
+    public boolean isFiltered()
+    {
+        return filtered;
+    }
+
+    /**
+     * Creates a new filter structure that corresponds to the element filter.
+     * @return a filter structure
+     */
+    public Filter createFilter()
+    {
+        return new Filter(filterType == null ? null : filterType.toArray(new String[0]), invert, grayscale, opacity, brightness);
+    }
+
+    /**
+     * Returns true if the element has a border radius specified.
+     */
+    public boolean isBorderRadius()
+    {
+        return borderRadius;
+    }
+
+    /**
+     * Returns the border radiuses of the element corners (already resized).
+     */
+    public BorderRadius getBorderRadius()
+    {
+        return radius;
+    }
+
+    public CSSProperty.BackgroundImage getBackgroundImage()
+    {
+        return backgroundImage;
+    }
+
+    /**
+     * Returns the background gradient or {@code null} when no gradient is used.
+     */
+    public TermFunction.Gradient getGradient()
+    {
+        return gradient;
+    }
+
+    /**
+     * Returns the transformation of the element or {@code null} when no transformation
+     * is applied. The returned object must not be modified.
+     */
+    public AffineTransform getTransform()
+    {
+        return transform;
+    }
+
+    /**
+     * Returns the X coordinate of the transformation origin relative to the content box.
+     */
+    public float getOriginX()
+    {
+        return originX;
+    }
+
+    /**
+     * Returns the Y coordinate of the transformation origin relative to the content box.
+     */
+    public float getOriginY()
+    {
+        return originY;
+    }
+
+    public Color getBorderTopColor()
+    {
+        return borderTopColor;
+    }
+
+    public Color getBorderRightColor()
+    {
+        return borderRightColor;
+    }
+
+    public Color getBorderBottomColor()
+    {
+        return borderBottomColor;
+    }
+
+    public Color getBorderLeftColor()
+    {
+        return borderLeftColor;
+    }
+
+    //==================================================================================================
+
+    /**
+     * Computes the transformation matrix from the transform property values.
+     *
+     * @return the transformation or {@code null} when no transformation is applied
+     */
+    private static AffineTransform decodeTransform(TermList values, CSSDecoder dec, Rectangle bounds, float resCoef)
+    {
+        boolean transformed = false;
+        AffineTransform ret = new AffineTransform();
+        for (Term<?> term : values)
+        {
+            if (term instanceof TermFunction.Rotate)
+            {
+                final double theta = dec.getAngle(((TermFunction.Rotate) term).getAngle());
+                ret.rotate(-theta);
+                transformed = true;
+            }
+            else if (term instanceof TermFunction.Scale)
+            {
+                float sx = ((TermFunction.Scale) term).getScaleX();
+                float sy = ((TermFunction.Scale) term).getScaleY();
+                ret.scale(sx, sy);
+                transformed = true;
+            }
+            else if (term instanceof TermFunction.ScaleX)
+            {
+                float sx = ((TermFunction.ScaleX) term).getScale();
+                ret.scale(sx, 1.0f);
+                transformed = true;
+            }
+            else if (term instanceof TermFunction.ScaleY)
+            {
+                float sy = ((TermFunction.ScaleY) term).getScale();
+                ret.scale(1.0f, sy);
+                transformed = true;
+            }
+            else if (term instanceof TermFunction.Skew)
+            {
+                double anx = dec.getAngle(((TermFunction.Skew) term).getSkewX());
+                double any = dec.getAngle(((TermFunction.Skew) term).getSkewY());
+                ret.shear(Math.tan(-anx), Math.tan(-any));
+                transformed = true;
+            }
+            else if (term instanceof TermFunction.SkewX)
+            {
+                double anx = dec.getAngle(((TermFunction.SkewX) term).getSkew());
+                ret.shear(Math.tan(-anx), 0.0);
+                transformed = true;
+            }
+            else if (term instanceof TermFunction.SkewY)
+            {
+                double any = dec.getAngle(((TermFunction.SkewY) term).getSkew());
+                ret.shear(0.0, -any);
+                transformed = true;
+            }
+            else if (term instanceof TermFunction.Matrix)
+            {
+                float[] vals = new float[6];
+                vals = ((TermFunction.Matrix) term).getValues();
+                vals[1] = -vals[1]; // must be inverted because of
+                                    // coordinate system in PDF
+                vals[2] = -vals[2];
+                vals[5] = -vals[5];
+                ret.concatenate(new AffineTransform(vals));
+                transformed = true;
+            }
+            else if (term instanceof TermFunction.Translate)
+            {
+                float tx = dec.getLength(((TermFunction.Translate) term).getTranslateX(), false, 0, 0,
+                        bounds.width);
+                float ty = dec.getLength(((TermFunction.Translate) term).getTranslateY(), false, 0, 0,
+                        bounds.height);
+                ret.translate(tx * resCoef, -ty * resCoef); // - because of the different coordinate system in
+                                                            // PDF; * rescoef because of the page ratio
+                transformed = true;
+            }
+            else if (term instanceof TermFunction.TranslateX)
+            {
+                float tx = dec.getLength(((TermFunction.TranslateX) term).getTranslate(), false, 0, 0,
+                        bounds.width);
+                ret.translate(tx * resCoef, 0.0);
+                transformed = true;
+            }
+            else if (term instanceof TermFunction.TranslateY)
+            {
+                float ty = dec.getLength(((TermFunction.TranslateY) term).getTranslate(), false, 0, 0,
+                        bounds.height);
+                ret.translate(0.0, -ty * resCoef);
+                transformed = true;
+            }
+        }
+        return transformed ? ret : null;
+    }
+
+    /**
+     * Computes the color of a border side.
+     */
+    private static Color decodeBorderColor(NodeData style, Color bgcolor, String colorName, String styleName)
+    {
+        Color clr = null;
+        // gets the color value from CSS property
+        TermColor tclr = style.getSpecifiedValue(TermColor.class, colorName);
+        CSSProperty.BorderStyle bst = style.getProperty(styleName);
+
+        if (bst != CSSProperty.BorderStyle.HIDDEN && (tclr == null || !tclr.isTransparent()))
+        {
+            if (tclr != null)
+            {
+                clr = tclr.getValue();
+            }
+            if (clr == null)
+            {
+                if (bgcolor != null)
+                    clr = bgcolor;
+                else
+                    clr = WHITE;
+            }
+        }
+        else
+        {
+            clr = bgcolor;
+        }
+        if (clr == null)
+            clr = WHITE;
+        return clr;
+    }
+
+}
@@ -0,0 +1,354 @@
+/*
+ * RenderCache.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 18. 10. 2026, 14:05:31 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.fit.cssbox.css.DOMAnalyzer;
+import org.fit.cssbox.layout.BrowserConfig;
+import org.fit.cssbox.layout.Dimension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import cz.vutbr.web.css.NodeData;
+
+/**
+ * A cache of the rendered PDF documents. The documents are identified by a key computed
+ * as a hash of the DOM tree, the resolved element styles, the page format, the browser
+ * configuration, the window size and the output options of the engine. The documents are kept in memory up to the given
+ * total size, the least recently used ones are removed first. Optionally, the documents
+ * are stored in a directory as well, so that they may be reused after they have been
+ * removed from the memory or by another instance.
+ *
+ * The cache assumes that the external resources (images, fonts) referenced by the
+ * document do not change.
+ *
+ * @author burgetr
+ */
+public class RenderCache
+{
+    private static final Logger log = LoggerFactory.getLogger(RenderCache.class);
+
+    private static final String FILE_SUFFIX = ".pdf";
+
+    private final long maxSize;
+    private final File directory;
+    private final LinkedHashMap<String, byte[]> entries;
+    private long size;
+
+    /**
+     * Creates a memory cache.
+     * @param maxSize the maximal total size of the cached documents in bytes
+     */
+    public RenderCache(long maxSize)
+    {
+        this(maxSize, null);
+    }
+
+    /**
+     * Creates a memory cache backed by a directory.
+     * @param maxSize the maximal total size of the documents cached in memory in bytes
+     * @param directory the directory used for storing the documents or {@code null}
+     * for a memory-only cache
+     * @throws IllegalArgumentException when the directory does not exist and it cannot be created
+     */
+    public RenderCache(long maxSize, File directory)
+    {
+        this.maxSize = maxSize;
+        this.directory = directory;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.size = 0;
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+            throw new IllegalArgumentException("Couldn't create the cache directory " + directory);
+    }
+
+    /**
+     * Obtains the cached document. A stored document that cannot be read is treated
+     * as not cached.
+     * @param key the document key
+     * @return a copy of the PDF document data or {@code null} when the document is not cached
+     */
+    public byte[] get(String key)
+    {
+        synchronized (entries)
+        {
+            final byte[] data = entries.get(key);
+            if (data != null)
+                return data.clone();
+        }
+        if (directory != null)
+        {
+            final Path file = new File(directory, key + FILE_SUFFIX).toPath();
+            if (Files.isRegularFile(file))
+            {
+                try
+                {
+                    final byte[] data = Files.readAllBytes(file);
+                    putMemory(key, data.clone());
+                    return data;
+                } catch (IOException e) {
+                    // the file has been removed or it is not readable
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores a document in the cache. The cache keeps its own copy of the data.
+     * When the document cannot be stored in the directory, the failure is logged
+     * and the document is only kept in the memory.
+     * @param key the document key
+     * @param data the PDF document data
+     */
+    public void put(String key, byte[] data)
+    {
+        putMemory(key, data.clone());
+        if (directory != null)
+        {
+            Path tmp = null;
+            try
+            {
+                // the file is written under a temporary name first so that the
+                // readers never see a partially written document
+                tmp = Files.createTempFile(directory.toPath(), key, ".tmp");
+                Files.write(tmp, data);
+                final Path target = new File(directory, key + FILE_SUFFIX).toPath();
+                try
+                {
+                    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+                tmp = null;
+            } catch (IOException e) {
+                log.warn("Could not store the document {} in {}: {}", key, directory, e.getMessage());
+            } finally {
+                if (tmp != null)
+                    deleteQuietly(tmp);
+            }
+        }
+    }
+
+    private static void deleteQuietly(Path file)
+    {
+        try
+        {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not remove the temporary file {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * Removes all the documents from the memory. The stored files are kept.
+     */
+    public void clear()
+    {
+        synchronized (entries)
+        {
+            entries.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * Obtains the PDF document for the given input. The engine is always created using
+     * {@link #createEngine(String, Element, DOMAnalyzer, Dimension, URL)} and its output
+     * options are included in the key. When the document is not cached, it is rendered
+     * using this engine and stored in the cache.
+     * @param pageFormat the page format name
+     * @param root the root DOM element
+     * @param decoder the DOM analyzer with the style sheets already loaded
+     * @param dim the window size
+     * @param baseurl the document base URL
+     * @param config the browser configuration or {@code null} for the default one
+     * @return the PDF document data (owned by the caller)
+     */
+    public byte[] render(String pageFormat, Element root, DOMAnalyzer decoder, Dimension dim, URL baseurl, BrowserConfig config)
+    {
+        final PDFEngine engine = createEngine(pageFormat, root, decoder, dim, baseurl);
+        try
+        {
+            if (config != null)
+                engine.setConfig(config);
+            final String key = createKey(pageFormat, root, decoder, dim, baseurl, engine);
+            byte[] data = get(key);
+            if (data == null)
+            {
+                engine.createLayout(dim);
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                engine.saveDocument(out);
+                data = out.toByteArray();
+                put(key, data);
+            }
+            return data;
+        } finally {
+            engine.closeDocument();
+        }
+    }
+
+    /**
+     * Creates the engine used for rendering the documents. The subclasses may override
+     * this method in order to configure the engine output options. The layout is not
+     * created by the engine until the document is rendered.
+     */
+    protected PDFEngine createEngine(String pageFormat, Element root, DOMAnalyzer decoder, Dimension dim, URL baseurl)
+    {
+        return new PDFEngine(pageFormat, root, decoder, baseurl);
+    }
+
+    /**
+     * Computes the cache key for the given input.
+     * @param pageFormat the page format name
+     * @param root the root DOM element
+     * @param decoder the DOM analyzer with the style sheets already loaded
+     * @param dim the window size
+     * @param baseurl the document base URL
+     * @param engine the engine used for rendering the document; its browser configuration
+     * and output options are included in the key
+     * @return the key
+     */
+    public static String createKey(String pageFormat, Element root, DOMAnalyzer decoder, Dimension dim, URL baseurl, PDFEngine engine)
+    {
+        final MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+        update(digest, pageFormat);
+        update(digest, dim.width + "x" + dim.height);
+        update(digest, String.valueOf(baseurl));
+        updateOptions(digest, engine);
+        if (engine.getConfig() != null)
+            updateConfig(digest, engine.getConfig());
+        updateNode(digest, root, decoder);
+
+        final StringBuilder ret = new StringBuilder(64);
+        for (byte b : digest.digest())
+            ret.append(String.format("%02x", b & 0xff));
+        return ret.toString();
+    }
+
+    //================================================================================
+
+    private void putMemory(String key, byte[] data)
+    {
+        synchronized (entries)
+        {
+            final byte[] old = entries.put(key, data);
+            if (old != null)
+                size -= old.length;
+            size += data.length;
+            // removes the least recently used entries
+            final Iterator<Map.Entry<String, byte[]>> it = entries.entrySet().iterator();
+            while (size > maxSize && it.hasNext())
+            {
+                size -= it.next().getValue().length;
+                it.remove();
+            }
+        }
+    }
+
+    private static void updateOptions(MessageDigest digest, PDFEngine engine)
+    {
+        update(digest, "pages:" + engine.getFirstPage() + "-" + engine.getLastPage());
+        update(digest, "images:" + engine.getImageResolution());
+        update(digest, "compression:" + engine.getCompressionLevel() + engine.isDeferredCompression());
+        update(digest, "resources:" + engine.isSharedResources());
+        update(digest, "links:" + engine.isLinkPerLine());
+    }
+
+    private static void updateConfig(MessageDigest digest, BrowserConfig config)
+    {
+        update(digest, "config:" + config.getUseHTML() + config.getLoadImages() + config.getLoadBackgroundImages()
+                + config.isLoadFonts() + config.getReplaceImagesWithAlt() + config.getClipViewport()
+                + config.getImageLoadTimeout());
+        if (config.getViewportBackgroundColor() != null)
+            update(digest, "bg:" + config.getViewportBackgroundColor().getRGB());
+        for (String name : new String[] { BrowserConfig.SERIF, BrowserConfig.SANS_SERIF, BrowserConfig.MONOSPACE,
+                BrowserConfig.CURSIVE, BrowserConfig.FANTASY })
+        {
+            final List<String> fonts = config.getLogicalFont(name);
+            update(digest, name + ":" + fonts);
+        }
+    }
+
+    /**
+     * Adds a DOM subtree to the digest including the resolved styles of the elements.
+     */
+    private static void updateNode(MessageDigest digest, Node node, DOMAnalyzer decoder)
+    {
+        switch (node.getNodeType())
+        {
+            case Node.ELEMENT_NODE:
+                update(digest, "<" + node.getNodeName());
+                final NamedNodeMap attrs = node.getAttributes();
+                for (int i = 0; i < attrs.getLength(); i++)
+                {
+                    final Node attr = attrs.item(i);
+                    update(digest, attr.getNodeName() + "=" + attr.getNodeValue());
+                }
+                final NodeData style = decoder.getElementStyle((Element) node);
+                if (style != null)
+                    update(digest, "{" + style.toString() + "}");
+                final NodeList children = node.getChildNodes();
+                for (int i = 0; i < children.getLength(); i++)
+                    updateNode(digest, children.item(i), decoder);
+                update(digest, ">");
+                break;
+            case Node.TEXT_NODE:
+            case Node.CDATA_SECTION_NODE:
+                update(digest, "\"" + node.getNodeValue());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static void update(MessageDigest digest, String value)
+    {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+}
@@ -0,0 +1,783 @@
+/*
+ * RenderTree.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 19. 10. 2026, 14:21:37 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import java.util.Arrays;
+
+import org.fit.cssbox.layout.Box;
+import org.fit.cssbox.layout.ElementBox;
+import org.fit.cssbox.layout.ListItemBox;
+import org.fit.cssbox.layout.Rectangle;
+import org.fit.cssbox.layout.ReplacedBox;
+import org.fit.cssbox.layout.TextBox;
+
+/**
+ * The tree of the rendered boxes that is used for breaking the document to pages (TREE).
+ * The nodes are identified by their indices and the node data is stored in parallel
+ * arrays: the box geometry and the offsets created by the paging, the parent, first child
+ * and next sibling indices, a type tag and the box itself. The nodes are numbered in the
+ * order of their creation, which is the paint order of the boxes.
+ *
+ * The nodes whose parent was not found when they were created do not belong to the tree
+ * until they are inserted using {@link #insert(int, int)}. The cached extents of the subtrees
+ * assume that the same resolution coefficient is used for all the queries.
+ *
+ * @author burgetr
+ */
+public class RenderTree
+{
+    /** An index that denotes no node. */
+    public static final int NONE = -1;
+
+    // type of the stored box
+    static final byte TYPE_NONE = 0;
+    static final byte TYPE_ELEM = 1;
+    static final byte TYPE_TEXT = 2;
+    static final byte TYPE_BOX = 3;
+    static final byte TYPE_ITEM = 4;
+
+    // node flags
+    private static final byte EXTENTS_VALID = 1; // the leaves are always valid
+    private static final byte CHILDREN_UNSORTED = 2;
+
+    private int size;
+    private int root = NONE;
+
+    // the boxes and their geometry
+    private Box[] boxes;
+    private byte[] types;
+    private float[] x, y, width, height;
+    private float[] plusOffset, plusHeight;
+
+    // tree structure
+    private int[] parent, firstChild, lastChild, nextSibling;
+    private int[] parentIDOfNoninserted;
+
+    // cached data about the descendants
+    private byte[] flags;
+    private float[] minTopElem, minTopNonElem, maxBottomElem, maxBottomNonElem;
+    private ChildIndex[] childIndex; // null when not valid
+
+    private PaintStyle[] paintStyles;
+
+    public RenderTree()
+    {
+        allocate(256);
+    }
+
+    /**
+     * Removes all the nodes.
+     */
+    public void clear()
+    {
+        Arrays.fill(boxes, 0, size, null);
+        Arrays.fill(childIndex, 0, size, null);
+        Arrays.fill(paintStyles, 0, size, null);
+        size = 0;
+        root = NONE;
+    }
+
+    /**
+     * Returns the number of nodes including the ones that are not inserted in the tree.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the root node.
+     */
+    public int getRoot()
+    {
+        return root;
+    }
+
+    /**
+     * Sets the root node of the tree.
+     */
+    public void setRoot(int node)
+    {
+        root = node;
+    }
+
+    /**
+     * Checks whether the node is the root or it has been inserted to the tree.
+     */
+    public boolean isInTree(int node)
+    {
+        return node == root || parent[node] != NONE;
+    }
+
+    /////////////////////////////////////////////////////////////////////
+    // Creating the nodes
+    /////////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates a new node for an ELEM. The node is not inserted to the tree.
+     * @return the new node index
+     */
+    public int addElem(ElementBox elem)
+    {
+        return add(elem, TYPE_ELEM, elem.getAbsoluteContentX(), elem.getAbsoluteContentY(),
+                elem.getWidth(), elem.getHeight());
+    }
+
+    /**
+     * Creates a new node for a TEXT. The node is not inserted to the tree.
+     * @return the new node index
+     */
+    public int addText(TextBox text)
+    {
+        return add(text, TYPE_TEXT, text.getAbsoluteContentX(), text.getAbsoluteContentY(),
+                text.getWidth(), text.getHeight());
+    }
+
+    /**
+     * Creates a new node for a BOX. The node is not inserted to the tree.
+     * @return the new node index
+     */
+    public int addReplaced(ReplacedBox box)
+    {
+        final Rectangle cb = ((Box) box).getAbsoluteContentBounds();
+        return add((Box) box, TYPE_BOX, cb.x, cb.y, cb.width, cb.height);
+    }
+
+    /**
+     * Creates a new node for a list ITEM marker. The node is not inserted to the tree.
+     * @return the new node index
+     */
+    public int addItem(ListItemBox item)
+    {
+        return add(item, TYPE_ITEM, item.getAbsoluteContentX(), item.getAbsoluteContentY(), -1, -1);
+    }
+
+    /**
+     * Creates a new node. The node is not inserted to the tree.
+     * @return the new node index
+     */
+    int add(Box box, byte type, float x, float y, float width, float height)
+    {
+        if (size == types.length)
+            allocate(size * 2);
+        final int n = size++;
+        this.boxes[n] = box;
+        this.types[n] = type;
+        this.x[n] = x;
+        this.y[n] = y;
+        this.width[n] = width;
+        this.height[n] = height;
+        this.plusOffset[n] = 0;
+        this.plusHeight[n] = 0;
+        this.parent[n] = NONE;
+        this.firstChild[n] = NONE;
+        this.lastChild[n] = NONE;
+        this.nextSibling[n] = NONE;
+        this.parentIDOfNoninserted[n] = -1;
+        this.flags[n] = EXTENTS_VALID;
+        return n;
+    }
+
+    /**
+     * Inserts a node to the children of the given parent node. The children are appended
+     * and they are sorted by their Y coordinates when they are read.
+     */
+    public void insert(int parentNode, int node)
+    {
+        parent[node] = parentNode;
+        final int last = lastChild[parentNode];
+        if (last == NONE)
+            firstChild[parentNode] = node;
+        else
+        {
+            nextSibling[last] = node;
+            // the children usually arrive in the top-down order, only a child above
+            // the last one requires sorting
+            if (y[last] > y[node])
+                flags[parentNode] |= CHILDREN_UNSORTED;
+        }
+        lastChild[parentNode] = node;
+        childIndex[parentNode] = null;
+        invalidateExtents(parentNode);
+    }
+
+    /////////////////////////////////////////////////////////////////////
+    // Tree structure
+    /////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the parent node or {@link #NONE}.
+     */
+    public int getParent(int node)
+    {
+        return parent[node];
+    }
+
+    /**
+     * Returns the first child of the node or {@link #NONE}. The children are ordered
+     * by their distance from the top of the page.
+     */
+    public int getFirstChild(int node)
+    {
+        sortChildren(node);
+        return firstChild[node];
+    }
+
+    /**
+     * Returns the next sibling of the node or {@link #NONE}. The siblings are ordered
+     * by their distance from the top of the page when the first one has been obtained
+     * using {@link #getFirstChild(int)}.
+     */
+    public int getNextSibling(int node)
+    {
+        return nextSibling[node];
+    }
+
+    /**
+     * Checks whether the node has some children.
+     */
+    public boolean hasChildren(int node)
+    {
+        return firstChild[node] != NONE;
+    }
+
+    /**
+     * Returns the parent ID of a node that has not been inserted to the tree.
+     */
+    public int getParentIDOfNoninsertedNode(int node)
+    {
+        return parentIDOfNoninserted[node];
+    }
+
+    /**
+     * Sets the parent ID of a node that has not been inserted to the tree.
+     */
+    public void setParentIDOfNoninsertedNode(int node, int parentID)
+    {
+        parentIDOfNoninserted[node] = parentID;
+    }
+
+    /////////////////////////////////////////////////////////////////////
+    // The node data
+    /////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the ID of ELEM/TEXT/BOX stored in the node
+     */
+    public int getID(int node)
+    {
+        final byte type = types[node];
+        if (type == TYPE_ELEM || type == TYPE_TEXT || type == TYPE_BOX)
+            return boxes[node].getOrder();
+        return -1;
+    }
+
+    /**
+     * Returns the box stored in the node.
+     */
+    public Box getBox(int node)
+    {
+        return boxes[node];
+    }
+
+    /**
+     * Returns true if the node stores ELEM
+     */
+    public boolean isElem(int node)
+    {
+        return types[node] == TYPE_ELEM;
+    }
+
+    /**
+     * Returns true if the node stores TEXT
+     */
+    public boolean isText(int node)
+    {
+        return types[node] == TYPE_TEXT;
+    }
+
+    /**
+     * Returns true if the node stores BOX
+     */
+    public boolean isReplaced(int node)
+    {
+        return types[node] == TYPE_BOX;
+    }
+
+    /**
+     * Returns true if the node stores a list ITEM marker
+     */
+    public boolean isItem(int node)
+    {
+        return types[node] == TYPE_ITEM;
+    }
+
+    /**
+     * Returns the ELEM stored in the node
+     */
+    public ElementBox getElem(int node)
+    {
+        return (types[node] == TYPE_ELEM) ? (ElementBox) boxes[node] : null;
+    }
+
+    /**
+     * Returns the TEXT stored in the node
+     */
+    public TextBox getText(int node)
+    {
+        return (types[node] == TYPE_TEXT) ? (TextBox) boxes[node] : null;
+    }
+
+    /**
+     * Returns the BOX stored in the node
+     */
+    public ReplacedBox getReplaced(int node)
+    {
+        return (types[node] == TYPE_BOX) ? (ReplacedBox) boxes[node] : null;
+    }
+
+    /**
+     * Returns the list ITEM stored in the node
+     */
+    public ListItemBox getItem(int node)
+    {
+        return (types[node] == TYPE_ITEM) ? (ListItemBox) boxes[node] : null;
+    }
+
+    /**
+     * Returns the distance of stored ELEM/TEXT/BOX/ITEM from top of the page
+     */
+    public float getElemY(int node)
+    {
+        return y[node];
+    }
+
+    /**
+     * Returns the distance of stored ELEM/TEXT/BOX/ITEM from left side of the page
+     */
+    public float getElemX(int node)
+    {
+        return x[node];
+    }
+
+    /**
+     * Returns height of stored ELEM/TEXT/BOX
+     */
+    public float getElemHeight(int node)
+    {
+        return height[node];
+    }
+
+    /**
+     * Returns width of stored ELEM/TEXT/BOX
+     */
+    public float getElemWidth(int node)
+    {
+        return width[node];
+    }
+
+    /**
+     * Returns the paint style of the stored ELEM or null when it has not been extracted yet
+     */
+    public PaintStyle getPaintStyle(int node)
+    {
+        return paintStyles[node];
+    }
+
+    /**
+     * Sets the paint style of the stored ELEM
+     */
+    public void setPaintStyle(int node, PaintStyle style)
+    {
+        paintStyles[node] = style;
+    }
+
+    /////////////////////////////////////////////////////////////////////
+    // OFFSETs and HEIGHTs changes
+    /////////////////////////////////////////////////////////////////////
+
+    /**
+     * Adds an offset of the node
+     */
+    public void addPlusOffset(int node, float newPlusOffset)
+    {
+        plusOffset[node] += newPlusOffset;
+        invalidateParent(node);
+    }
+
+    /**
+     * Returns the offset of the node
+     */
+    public float getPlusOffset(int node)
+    {
+        return plusOffset[node];
+    }
+
+    /**
+     * Add an increment to height of the node
+     */
+    public void addPlusHeight(int node, float newPlusHeight)
+    {
+        plusHeight[node] += newPlusHeight;
+        invalidateParent(node);
+    }
+
+    /**
+     * Returns the increment to height of the node
+     */
+    public float getPlusHeight(int node)
+    {
+        return plusHeight[node];
+    }
+
+    private void invalidateParent(int node)
+    {
+        final int p = parent[node];
+        if (p != NONE)
+        {
+            childIndex[p] = null;
+            invalidateExtents(p);
+        }
+    }
+
+    /////////////////////////////////////////////////////////////////////
+    // Extents of the nodes and their subtrees
+    /////////////////////////////////////////////////////////////////////
+
+    /**
+     * Returns the resized distance of the top of the node from the top of the document
+     */
+    public float getTop(int node, float resCoef)
+    {
+        return y[node] * resCoef + plusOffset[node];
+    }
+
+    /**
+     * Returns the resized distance of the bottom of the node from the top of the document
+     */
+    public float getBottom(int node, float resCoef)
+    {
+        return y[node] * resCoef + height[node] * resCoef + plusOffset[node] + plusHeight[node];
+    }
+
+    /**
+     * Finds the top of first descendant in the subtree. Non-ElementBox descendants are
+     * preferred, the ElementBox descendants are used only when there are no other ones.
+     *
+     * @return the resized distance from top of the document
+     */
+    public float getFirstTop(int node, float resCoef)
+    {
+        if (firstChild[node] == NONE)
+            return getTop(node, resCoef);
+        validateExtents(node, resCoef);
+        if (minTopNonElem[node] != Float.MAX_VALUE)
+            return minTopNonElem[node];
+        if (minTopElem[node] != Float.MAX_VALUE)
+            return minTopElem[node];
+        return -2;
+    }
+
+    /**
+     * Finds the bottom of last descendant in the subtree. Non-ElementBox descendants are
+     * preferred, the ElementBox descendants are used only when there are no other ones.
+     *
+     * @return the resized distance from top of the document
+     */
+    public float getLastBottom(int node, float resCoef)
+    {
+        if (firstChild[node] == NONE)
+            return getBottom(node, resCoef);
+        validateExtents(node, resCoef);
+        if (maxBottomNonElem[node] != -Float.MAX_VALUE)
+            return maxBottomNonElem[node];
+        if (maxBottomElem[node] != -Float.MAX_VALUE)
+            return maxBottomElem[node];
+        return -2;
+    }
+
+    /**
+     * Recomputes the cached extents of the subtree bottom-up when they are not valid.
+     */
+    private void validateExtents(int node, float resCoef)
+    {
+        if ((flags[node] & EXTENTS_VALID) != 0)
+            return;
+        float topElem = Float.MAX_VALUE;
+        float topNonElem = Float.MAX_VALUE;
+        float bottomElem = -Float.MAX_VALUE;
+        float bottomNonElem = -Float.MAX_VALUE;
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child])
+        {
+            final float top = getTop(child, resCoef);
+            final float bottom = getBottom(child, resCoef);
+            if (types[child] == TYPE_ELEM)
+            {
+                topElem = Math.min(topElem, top);
+                bottomElem = Math.max(bottomElem, bottom);
+            }
+            else
+            {
+                topNonElem = Math.min(topNonElem, top);
+                bottomNonElem = Math.max(bottomNonElem, bottom);
+            }
+            if (firstChild[child] != NONE)
+            {
+                validateExtents(child, resCoef);
+                topElem = Math.min(topElem, minTopElem[child]);
+                topNonElem = Math.min(topNonElem, minTopNonElem[child]);
+                bottomElem = Math.max(bottomElem, maxBottomElem[child]);
+                bottomNonElem = Math.max(bottomNonElem, maxBottomNonElem[child]);
+            }
+        }
+        minTopElem[node] = topElem;
+        minTopNonElem[node] = topNonElem;
+        maxBottomElem[node] = bottomElem;
+        maxBottomNonElem[node] = bottomNonElem;
+        flags[node] |= EXTENTS_VALID;
+    }
+
+    /**
+     * Marks the cached extents of the node and all its ancestors as invalid.
+     */
+    private void invalidateExtents(int node)
+    {
+        // a valid node has all its descendants valid so we may stop at the first invalid one;
+        // the leaves are valid so that a new parent does not stop the walk
+        for (int n = node; n != NONE && (flags[n] & EXTENTS_VALID) != 0; n = parent[n])
+            flags[n] &= ~EXTENTS_VALID;
+    }
+
+    /**
+     * Finds the child that is closest above the given child, i.e. the one with the lowest
+     * bottom that is not below the top of the given child.
+     *
+     * @return the node or {@link #NONE} when there is no such child
+     */
+    public int getChildAbove(int parentNode, int child, float resCoef)
+    {
+        final ChildIndex index = validateChildIndex(parentNode, resCoef);
+        final float top = getTop(child, resCoef);
+        final int id = getID(child);
+        // find the last child whose bottom is not below the top
+        int lo = 0;
+        int hi = index.bottoms.length;
+        while (lo < hi)
+        {
+            final int mid = (lo + hi) >>> 1;
+            if (index.bottoms[mid] <= top)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        for (int i = lo - 1; i >= 0; i--)
+        {
+            if (getID(index.byBottom[i]) != id)
+                return index.byBottom[i];
+        }
+        return NONE;
+    }
+
+    /**
+     * Finds the child that is closest below the given child, i.e. the one with the highest
+     * top that is not above the bottom of the given child.
+     *
+     * @return the node or {@link #NONE} when there is no such child
+     */
+    public int getChildBelow(int parentNode, int child, float resCoef)
+    {
+        final ChildIndex index = validateChildIndex(parentNode, resCoef);
+        final float bottom = getBottom(child, resCoef);
+        final int id = getID(child);
+        // find the first child whose top is not above the bottom
+        int lo = 0;
+        int hi = index.tops.length;
+        while (lo < hi)
+        {
+            final int mid = (lo + hi) >>> 1;
+            if (index.tops[mid] < bottom)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        // from the children with the same top, the last one is used
+        int ret = NONE;
+        float retTop = 0;
+        for (int i = lo; i < index.tops.length; i++)
+        {
+            if (ret != NONE && index.tops[i] != retTop)
+                break;
+            if (getID(index.byTop[i]) != id)
+            {
+                ret = index.byTop[i];
+                retTop = index.tops[i];
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Obtains the index of the children sorted by their tops and bottoms. The index is
+     * recomputed when it is not valid.
+     */
+    private ChildIndex validateChildIndex(int node, float resCoef)
+    {
+        ChildIndex ret = childIndex[node];
+        if (ret != null)
+            return ret;
+        sortChildren(node);
+        int n = 0;
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child])
+            n++;
+        // sort keys: the coordinate in the upper half, the child position in the lower half
+        // so that the children with equal coordinates remain in the original order
+        final int[] children = new int[n];
+        final long[] topKeys = new long[n];
+        final long[] bottomKeys = new long[n];
+        int i = 0;
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child])
+        {
+            children[i] = child;
+            topKeys[i] = ((long) sortableBits(getTop(child, resCoef)) << 32) | i;
+            bottomKeys[i] = ((long) sortableBits(getBottom(child, resCoef)) << 32) | i;
+            i++;
+        }
+        Arrays.sort(topKeys);
+        Arrays.sort(bottomKeys);
+        ret = new ChildIndex(n);
+        for (i = 0; i < n; i++)
+        {
+            ret.byTop[i] = children[(int) topKeys[i]];
+            ret.tops[i] = getTop(ret.byTop[i], resCoef);
+            ret.byBottom[i] = children[(int) bottomKeys[i]];
+            ret.bottoms[i] = getBottom(ret.byBottom[i], resCoef);
+        }
+        childIndex[node] = ret;
+        return ret;
+    }
+
+    /**
+     * Sorts the children by their distance from the top of the page when they have not
+     * been inserted in this order. The children with the same Y coordinate remain in
+     * the insertion order.
+     */
+    private void sortChildren(int node)
+    {
+        if ((flags[node] & CHILDREN_UNSORTED) == 0)
+            return;
+        int n = 0;
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child])
+            n++;
+        final int[] children = new int[n];
+        final long[] keys = new long[n];
+        int i = 0;
+        for (int child = firstChild[node]; child != NONE; child = nextSibling[child])
+        {
+            children[i] = child;
+            keys[i] = ((long) sortableBits(y[child]) << 32) | i;
+            i++;
+        }
+        Arrays.sort(keys);
+        int prev = NONE;
+        for (i = 0; i < n; i++)
+        {
+            final int child = children[(int) keys[i]];
+            if (prev == NONE)
+                firstChild[node] = child;
+            else
+                nextSibling[prev] = child;
+            prev = child;
+        }
+        nextSibling[prev] = NONE;
+        lastChild[node] = prev;
+        flags[node] &= ~CHILDREN_UNSORTED;
+    }
+
+    /**
+     * Converts a float value to an int that preserves the ordering of the float values.
+     */
+    private static int sortableBits(float value)
+    {
+        final int bits = Float.floatToIntBits(value);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
+    /**
+     * Allocates or enlarges the node arrays.
+     */
+    private void allocate(int capacity)
+    {
+        boxes = (boxes == null) ? new Box[capacity] : Arrays.copyOf(boxes, capacity);
+        types = (types == null) ? new byte[capacity] : Arrays.copyOf(types, capacity);
+        x = grow(x, capacity);
+        y = grow(y, capacity);
+        width = grow(width, capacity);
+        height = grow(height, capacity);
+        plusOffset = grow(plusOffset, capacity);
+        plusHeight = grow(plusHeight, capacity);
+        parent = grow(parent, capacity);
+        firstChild = grow(firstChild, capacity);
+        lastChild = grow(lastChild, capacity);
+        nextSibling = grow(nextSibling, capacity);
+        parentIDOfNoninserted = grow(parentIDOfNoninserted, capacity);
+        flags = (flags == null) ? new byte[capacity] : Arrays.copyOf(flags, capacity);
+        minTopElem = grow(minTopElem, capacity);
+        minTopNonElem = grow(minTopNonElem, capacity);
+        maxBottomElem = grow(maxBottomElem, capacity);
+        maxBottomNonElem = grow(maxBottomNonElem, capacity);
+        childIndex = (childIndex == null) ? new ChildIndex[capacity] : Arrays.copyOf(childIndex, capacity);
+        paintStyles = (paintStyles == null) ? new PaintStyle[capacity] : Arrays.copyOf(paintStyles, capacity);
+    }
+
+    private static float[] grow(float[] a, int capacity)
+    {
+        return (a == null) ? new float[capacity] : Arrays.copyOf(a, capacity);
+    }
+
+    private static int[] grow(int[] a, int capacity)
+    {
+        return (a == null) ? new int[capacity] : Arrays.copyOf(a, capacity);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RenderTree [" + size + " nodes]";
+    }
+
+    /**
+     * The children of a node sorted by their tops and bottoms.
+     */
+    private static final class ChildIndex
+    {
+        final int[] byTop, byBottom;
+        final float[] tops, bottoms;
+
+        ChildIndex(int n)
+        {
+            byTop = new int[n];
+            byBottom = new int[n];
+            tops = new float[n];
+            bottoms = new float[n];
+        }
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * StreamCompressor.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 19. 10. 2026, 00:12:40 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+
+/**
+ * Compresses the uncompressed page content streams of a document before it is saved.
+ * The stream data is compressed concurrently either on a shared executor or on a pool
+ * of threads created for each run; the deflaters are reused by the tasks. The
+ * compressed data is stored back to the streams in the document order by the calling
+ * thread, with a limited number of streams being compressed at the same time.
+ *
+ * @author burgetr
+ */
+public class StreamCompressor
+{
+    /** Maximal number of streams waiting for being stored for each thread */
+    private static final int STREAMS_PER_THREAD = 4;
+
+    private final int level;
+    private final int threads;
+    private final ExecutorService executor;
+    private final Queue<Deflater> idleDeflaters;
+
+    /**
+     * Creates a new compressor that uses its own pool of threads.
+     * @param level the compression level (see {@link Deflater}); {@link Deflater#BEST_SPEED} for the fastest compression
+     * @param threads the number of threads used for compression; 1 or less for compressing in the calling thread
+     */
+    public StreamCompressor(int level, int threads)
+    {
+        this.level = level;
+        this.threads = threads;
+        this.executor = null;
+        this.idleDeflaters = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Creates a new compressor that uses a shared executor. The executor is not shut down
+     * by the compressor.
+     * @param level the compression level (see {@link Deflater}); {@link Deflater#BEST_SPEED} for the fastest compression
+     * @param executor the executor used for compression
+     */
+    public StreamCompressor(int level, ExecutorService executor)
+    {
+        this.level = level;
+        this.threads = Runtime.getRuntime().availableProcessors();
+        this.executor = executor;
+        this.idleDeflaters = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Compresses all the uncompressed content streams of the document pages and the
+     * tiling patterns used by the pages.
+     * @param doc the document to process
+     * @throws IOException
+     */
+    public void compress(PDDocument doc) throws IOException
+    {
+        final List<COSStream> streams = findStreams(doc);
+        if (streams.isEmpty())
+            return;
+        final ExecutorService ownExecutor = (this.executor == null && threads > 1) ? Executors.newFixedThreadPool(threads) : null;
+        final ExecutorService executor = (this.executor != null) ? this.executor : ownExecutor;
+        try
+        {
+            final Deque<COSStream> pending = new ArrayDeque<>();
+            final Deque<Future<byte[]>> results = new ArrayDeque<>();
+            final int window = Math.max(1, threads) * STREAMS_PER_THREAD;
+            for (COSStream stream : streams)
+            {
+                final byte[] data = readStream(stream);
+                if (executor != null)
+                {
+                    pending.add(stream);
+                    results.add(executor.submit(() -> deflate(data)));
+                    if (pending.size() >= window)
+                        writeStream(pending.remove(), getResult(results.remove()));
+                }
+                else
+                    writeStream(stream, deflate(data));
+            }
+            while (!pending.isEmpty())
+                writeStream(pending.remove(), getResult(results.remove()));
+        } finally {
+            if (ownExecutor != null)
+                ownExecutor.shutdownNow();
+            // the deflaters of the tasks still running (after a failure) are left to the GC
+            Deflater deflater;
+            while ((deflater = idleDeflaters.poll()) != null)
+                deflater.end();
+        }
+    }
+
+    //================================================================================
+
+    /**
+     * Finds the uncompressed streams to be compressed in the document order.
+     */
+    private List<COSStream> findStreams(PDDocument doc)
+    {
+        final List<COSStream> ret = new ArrayList<>();
+        final Set<COSStream> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Set<COSDictionary> foundResources = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (PDPage page : doc.getPages())
+        {
+            final COSBase contents = page.getCOSObject().getDictionaryObject(COSName.CONTENTS);
+            if (contents instanceof COSStream)
+                addStream(ret, found, (COSStream) contents);
+            else if (contents instanceof COSArray)
+            {
+                final COSArray array = (COSArray) contents;
+                for (int i = 0; i < array.size(); i++)
+                {
+                    final COSBase item = array.getObject(i);
+                    if (item instanceof COSStream)
+                        addStream(ret, found, (COSStream) item);
+                }
+            }
+            // tiling patterns, the resources may be shared by several pages
+            final COSBase resources = page.getCOSObject().getDictionaryObject(COSName.RESOURCES);
+            if (resources instanceof COSDictionary && foundResources.add((COSDictionary) resources))
+            {
+                final COSBase patterns = ((COSDictionary) resources).getDictionaryObject(COSName.PATTERN);
+                if (patterns instanceof COSDictionary)
+                {
+                    for (COSBase pattern : ((COSDictionary) patterns).getValues())
+                    {
+                        if (pattern instanceof COSObject)
+                            pattern = ((COSObject) pattern).getObject();
+                        if (pattern instanceof COSStream)
+                            addStream(ret, found, (COSStream) pattern);
+                    }
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static void addStream(List<COSStream> streams, Set<COSStream> found, COSStream stream)
+    {
+        if (stream.getFilters() == null && stream.getLength() > 0 && found.add(stream))
+            streams.add(stream);
+    }
+
+    private static byte[] readStream(COSStream stream) throws IOException
+    {
+        try (InputStream in = stream.createRawInputStream())
+        {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private static void writeStream(COSStream stream, byte[] data) throws IOException
+    {
+        try (OutputStream out = stream.createRawOutputStream())
+        {
+            out.write(data);
+        }
+        stream.setItem(COSName.FILTER, COSName.FLATE_DECODE);
+    }
+
+    private static byte[] getResult(Future<byte[]> result)
+    {
+        try
+        {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Compresses the data using an idle deflater or a new one.
+     */
+    private byte[] deflate(byte[] data)
+    {
+        Deflater deflater = idleDeflaters.poll();
+        if (deflater == null)
+            deflater = new Deflater(level);
+        try
+        {
+            deflater.reset();
+            deflater.setInput(data);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+            final byte[] buf = new byte[16384];
+            while (!deflater.finished())
+            {
+                final int n = deflater.deflate(buf);
+                out.write(buf, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            idleDeflaters.add(deflater);
+        }
+    }
+
+}
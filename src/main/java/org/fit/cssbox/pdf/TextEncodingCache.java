@@ -0,0 +1,163 @@
+/*
+ * TextEncodingCache.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 18. 10. 2026, 11:02:47 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.apache.pdfbox.pdmodel.font.PDFont;
+
+/**
+ * A per-document cache of encoded text strings. For each font and string, it keeps
+ * the encoded glyph codes so that the repeated strings do not have to be encoded by the font
+ * again. The code points are registered for font subsetting when the string is encoded
+ * for the first time. ASCII strings are encoded using a per-font table of the encoded characters.
+ *
+ * @author burgetr
+ */
+public class TextEncodingCache
+{
+    /** Maximal number of strings cached for a single font */
+    private static final int MAX_STRINGS = 10000;
+    /** Maximal length of a string to be cached */
+    private static final int MAX_LENGTH = 64;
+
+    private Map<PDFont, FontEntry> cache;
+
+    public TextEncodingCache()
+    {
+        cache = new IdentityHashMap<>();
+    }
+
+    /**
+     * Obtains the encoded glyph codes of the given string.
+     * @param font the font used for encoding the string
+     * @param text the string to encode
+     * @return the encoded string; the returned array must not be modified
+     * @throws IOException
+     * @throws IllegalArgumentException when some of the characters cannot be encoded by the font
+     */
+    public byte[] getEncoded(PDFont font, String text) throws IOException
+    {
+        FontEntry entry = cache.get(font);
+        if (entry == null)
+        {
+            entry = new FontEntry(font);
+            cache.put(font, entry);
+        }
+        return entry.getEncoded(text);
+    }
+
+    //================================================================================
+
+    private static class FontEntry
+    {
+        private final PDFont font;
+        private final boolean subset;
+        private final byte[][] ascii;
+        private final Map<String, byte[]> strings;
+
+        public FontEntry(PDFont font)
+        {
+            this.font = font;
+            this.subset = font.willBeSubset();
+            this.ascii = new byte[128][];
+            this.strings = new HashMap<>();
+        }
+
+        public byte[] getEncoded(String text) throws IOException
+        {
+            final boolean cacheable = text.length() <= MAX_LENGTH;
+            if (cacheable)
+            {
+                final byte[] cached = strings.get(text);
+                if (cached != null)
+                    return cached;
+            }
+            final byte[] ret = isAscii(text) ? encodeAscii(text) : encode(text);
+            if (cacheable && strings.size() < MAX_STRINGS)
+                strings.put(text, ret);
+            return ret;
+        }
+
+        /**
+         * Encodes a general string and registers its code points for subsetting.
+         */
+        private byte[] encode(String text) throws IOException
+        {
+            final byte[] ret = font.encode(text);
+            if (subset)
+            {
+                int offset = 0;
+                while (offset < text.length())
+                {
+                    final int codePoint = text.codePointAt(offset);
+                    font.addToSubset(codePoint);
+                    offset += Character.charCount(codePoint);
+                }
+            }
+            return ret;
+        }
+
+        /**
+         * Encodes an ASCII string using the table of encoded characters.
+         */
+        private byte[] encodeAscii(String text) throws IOException
+        {
+            final int len = text.length();
+            final byte[][] codes = new byte[len][];
+            int size = 0;
+            for (int i = 0; i < len; i++)
+            {
+                final char c = text.charAt(i);
+                byte[] code = ascii[c];
+                if (code == null)
+                {
+                    code = encode(String.valueOf(c));
+                    ascii[c] = code;
+                }
+                codes[i] = code;
+                size += code.length;
+            }
+            final byte[] ret = new byte[size];
+            int pos = 0;
+            for (int i = 0; i < len; i++)
+            {
+                System.arraycopy(codes[i], 0, ret, pos, codes[i].length);
+                pos += codes[i].length;
+            }
+            return ret;
+        }
+
+        private static boolean isAscii(String text)
+        {
+            for (int i = 0; i < text.length(); i++)
+            {
+                if (text.charAt(i) >= 128)
+                    return false;
+            }
+            return true;
+        }
+    }
+
+}
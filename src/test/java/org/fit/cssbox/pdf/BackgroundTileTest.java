@@ -0,0 +1,210 @@
+/*
+ * BackgroundTileTest.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 19. 10. 2026, 17:48:31 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSNumber;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.apache.pdfbox.pdmodel.graphics.pattern.PDTilingPattern;
+import org.apache.pdfbox.util.Matrix;
+import org.fit.cssbox.layout.Rectangle;
+import org.junit.Test;
+
+/**
+ * Tests the placement of the background image tiles and the tiling patterns painted
+ * for the repeated background images.
+ *
+ * @author burgetr
+ */
+public class BackgroundTileTest
+{
+    private static final float PAGE_HEIGHT = 800;
+    private static final float RES_COEF = 0.5f;
+
+    // a background on the second page moved by a page break offset of 10
+    private static final Rectangle BOUNDS = new Rectangle(100, 2000, 400, 300);
+    private static final Rectangle CLIPPED = new Rectangle(0, 0, 400, 300);
+    private static final float SHIFT = 10 - PAGE_HEIGHT;
+
+    @Test
+    public void repeatedBackground() throws IOException
+    {
+        final BackgroundTile tile = BackgroundTile.create(BOUNDS, CLIPPED, new Rectangle(30, 20, 50, 40),
+                true, false, RES_COEF, PAGE_HEIGHT, SHIFT, 0);
+        assertNotNull(tile);
+        assertTrue(tile.isRepeated());
+        // the clip is the full background width and a single tile height
+        assertArea(tile, 50, 560, 200, 20);
+        // the first tile is at [65, 560] and it has the size of 25 x 20
+        assertEquals(15, tile.getPhaseX(), 0.001f);
+        assertEquals(0, tile.getPhaseY(), 0.001f);
+
+        try (PDDocument doc = render(tile))
+        {
+            final PDPage page = doc.getPage(0);
+            final List<COSName> names = new ArrayList<>();
+            page.getResources().getPatternNames().forEach(names::add);
+            assertEquals(1, names.size());
+            final PDTilingPattern pattern = (PDTilingPattern) page.getResources().getPattern(names.get(0));
+            assertEquals(25, pattern.getXStep(), 0.001f);
+            assertEquals(20, pattern.getYStep(), 0.001f);
+            assertEquals(25, pattern.getBBox().getWidth(), 0.001f);
+            assertEquals(20, pattern.getBBox().getHeight(), 0.001f);
+            final Matrix matrix = pattern.getMatrix();
+            assertEquals(1, matrix.getScaleX(), 0.001f);
+            assertEquals(1, matrix.getScaleY(), 0.001f);
+            assertEquals(15, matrix.getTranslateX(), 0.001f);
+            assertEquals(0, matrix.getTranslateY(), 0.001f);
+
+            // the pattern fills the clip area
+            final List<Object> tokens = parse(page);
+            assertEquals(names.get(0), operands(tokens, "scn").get(0));
+            assertNumbers(operands(tokens, "re"), 50, 560, 200, 20);
+            assertTrue(tokens.indexOf(operator(tokens, "f")) > tokens.indexOf(operator(tokens, "re")));
+        }
+    }
+
+    @Test
+    public void phaseOfTilesBeforeBackground()
+    {
+        // the tile starts left to the background and below the page
+        final BackgroundTile tile = BackgroundTile.create(BOUNDS, CLIPPED, new Rectangle(-120, 290, 50, 40),
+                true, true, RES_COEF, PAGE_HEIGHT, SHIFT, 0);
+        assertNotNull(tile);
+        assertArea(tile, 50, 440, 200, 150);
+        // the tile position [-10, 425] modulo the tile size
+        assertEquals(15, tile.getPhaseX(), 0.001f);
+        assertEquals(5, tile.getPhaseY(), 0.001f);
+    }
+
+    @Test
+    public void singleImage() throws IOException
+    {
+        // the image exceeds the clipped area of the background
+        final Rectangle clipped = new Rectangle(0, 0, 400, 40);
+        final BackgroundTile tile = BackgroundTile.create(BOUNDS, clipped, new Rectangle(30, 20, 50, 40),
+                false, false, RES_COEF, PAGE_HEIGHT, SHIFT, 100);
+        assertNotNull(tile);
+        assertTrue(!tile.isRepeated());
+        // the extra height is only used for the vertically repeated images
+        assertArea(tile, 65, 570, 25, 10);
+
+        try (PDDocument doc = render(tile))
+        {
+            final PDPage page = doc.getPage(0);
+            assertTrue(!page.getResources().getPatternNames().iterator().hasNext());
+            final List<Object> tokens = parse(page);
+            assertNumbers(operands(tokens, "re"), 65, 570, 25, 10);
+            assertTrue(tokens.indexOf(operator(tokens, "W")) > tokens.indexOf(operator(tokens, "re")));
+            // the image is drawn in the tile size at the tile position
+            assertNumbers(operands(tokens, "cm"), 25, 0, 0, 20, 65, 560);
+        }
+    }
+
+    @Test
+    public void imageOutsideClip()
+    {
+        assertNull(BackgroundTile.create(BOUNDS, CLIPPED, new Rectangle(30, 300, 50, 40),
+                true, false, RES_COEF, PAGE_HEIGHT, SHIFT, 0));
+        assertNull(BackgroundTile.create(BOUNDS, CLIPPED, new Rectangle(-60, 20, 50, 40),
+                false, true, RES_COEF, PAGE_HEIGHT, SHIFT, 0));
+    }
+
+    //================================================================================
+
+    private static void assertArea(BackgroundTile tile, float x, float y, float width, float height)
+    {
+        assertEquals(x, tile.getAreaX(), 0.001f);
+        assertEquals(y, tile.getAreaY(), 0.001f);
+        assertEquals(width, tile.getAreaWidth(), 0.001f);
+        assertEquals(height, tile.getAreaHeight(), 0.001f);
+    }
+
+    private static void assertNumbers(List<Object> operands, float... values)
+    {
+        assertEquals(values.length, operands.size());
+        for (int i = 0; i < values.length; i++)
+            assertEquals(values[i], ((COSNumber) operands.get(i)).floatValue(), 0.001f);
+    }
+
+    private static PDDocument render(BackgroundTile tile) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PDDocument doc = new PDDocument())
+        {
+            final PDPage page = new PDPage(new PDRectangle(600, PAGE_HEIGHT));
+            doc.addPage(page);
+            final PDImageXObject ximage = LosslessFactory.createFromImage(doc,
+                    new BufferedImage(2, 2, BufferedImage.TYPE_INT_RGB));
+            try (PDPageContentStream content = new PDPageContentStream(doc, page))
+            {
+                tile.draw(content, page.getResources(), ximage, tile.isRepeated() ? tile.createPattern(ximage) : null);
+            }
+            doc.save(out);
+        }
+        return PDDocument.load(out.toByteArray());
+    }
+
+    private static List<Object> parse(PDPage page) throws IOException
+    {
+        final PDFStreamParser parser = new PDFStreamParser(page);
+        parser.parse();
+        return parser.getTokens();
+    }
+
+    private static Operator operator(List<Object> tokens, String name)
+    {
+        for (Object token : tokens)
+        {
+            if (token instanceof Operator && ((Operator) token).getName().equals(name))
+                return (Operator) token;
+        }
+        throw new AssertionError("missing operator " + name);
+    }
+
+    private static List<Object> operands(List<Object> tokens, String name)
+    {
+        final int index = tokens.indexOf(operator(tokens, name));
+        int start = index;
+        while (start > 0 && !(tokens.get(start - 1) instanceof Operator))
+            start--;
+        return tokens.subList(start, index);
+    }
+
+}
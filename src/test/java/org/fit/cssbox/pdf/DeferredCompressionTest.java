@@ -0,0 +1,155 @@
+/*
+ * DeferredCompressionTest.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 19. 10. 2026, 20:35:10 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.fit.cssbox.css.CSSNorm;
+import org.fit.cssbox.css.DOMAnalyzer;
+import org.fit.cssbox.io.DefaultDOMSource;
+import org.fit.cssbox.io.DefaultDocumentSource;
+import org.fit.cssbox.io.DocumentSource;
+import org.fit.cssbox.layout.Dimension;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+/**
+ * Tests that the page contents written uncompressed by the engine are compressed
+ * before the document is obtained or saved.
+ *
+ * @author burgetr
+ */
+public class DeferredCompressionTest
+{
+    private static final int PARAGRAPHS = 200;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void documentIsCompressedByDefault() throws Exception
+    {
+        final PDFEngine engine = createEngine();
+        try
+        {
+            assertTrue(engine.isDeferredCompression());
+            engine.createLayout(new Dimension(1200, 600));
+            final PDDocument doc = engine.getDocument();
+            assertTrue(doc.getNumberOfPages() > 1);
+            final List<COSStream> streams = getContentStreams(doc);
+            for (COSStream stream : streams)
+                assertEquals(COSName.FLATE_DECODE, stream.getFilters());
+            // nothing is compressed again
+            final List<Long> lengths = getLengths(streams);
+            engine.compressContent();
+            assertEquals(lengths, getLengths(streams));
+        } finally {
+            engine.closeDocument();
+        }
+    }
+
+    @Test
+    public void inlineCompression() throws Exception
+    {
+        final PDFEngine engine = createEngine();
+        try
+        {
+            engine.setDeferredCompression(false);
+            engine.createLayout(new Dimension(1200, 600));
+            final List<COSStream> streams = getContentStreams(engine.getDocument());
+            assertFalse(streams.isEmpty());
+            for (COSStream stream : streams)
+                assertEquals(COSName.FLATE_DECODE, stream.getFilters());
+        } finally {
+            engine.closeDocument();
+        }
+    }
+
+    //================================================================================
+
+    private static List<COSStream> getContentStreams(PDDocument doc)
+    {
+        final List<COSStream> ret = new ArrayList<>();
+        for (PDPage page : doc.getPages())
+        {
+            final COSBase contents = page.getCOSObject().getDictionaryObject(COSName.CONTENTS);
+            if (contents instanceof COSStream)
+                ret.add((COSStream) contents);
+            else if (contents instanceof COSArray)
+            {
+                final COSArray array = (COSArray) contents;
+                for (int i = 0; i < array.size(); i++)
+                {
+                    final COSStream stream = (COSStream) array.getObject(i);
+                    // the empty streams are never compressed
+                    if (stream.getLength() > 0)
+                        ret.add(stream);
+                }
+            }
+        }
+        return ret;
+    }
+
+    private static List<Long> getLengths(List<COSStream> streams)
+    {
+        final List<Long> ret = new ArrayList<>();
+        for (COSStream stream : streams)
+            ret.add(stream.getLength());
+        return ret;
+    }
+
+    private PDFEngine createEngine() throws Exception
+    {
+        final StringBuilder html = new StringBuilder("<html><body>");
+        for (int i = 0; i < PARAGRAPHS; i++)
+            html.append("<p style=\"border: 1px solid red\">Paragraph ").append(i).append("</p>");
+        html.append("</body></html>");
+        final File file = folder.newFile("text.html");
+        Files.write(file.toPath(), html.toString().getBytes(StandardCharsets.UTF_8));
+        try (DocumentSource src = new DefaultDocumentSource(file.toURI().toURL()))
+        {
+            final Document doc = new DefaultDOMSource(src).parse();
+            final DOMAnalyzer da = new DOMAnalyzer(doc, src.getURL());
+            da.attributesToStyles();
+            da.addStyleSheet(null, CSSNorm.stdStyleSheet(), DOMAnalyzer.Origin.AGENT);
+            da.addStyleSheet(null, CSSNorm.userStyleSheet(), DOMAnalyzer.Origin.AGENT);
+            da.getStyleSheets();
+            return new PDFEngine("A4", da.getRoot(), da, src.getURL());
+        }
+    }
+
+}
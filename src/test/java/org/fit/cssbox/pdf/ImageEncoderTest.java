@@ -0,0 +1,163 @@
+/*
+ * ImageEncoderTest.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 19. 10. 2026, 10:31:08 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceGray;
+import org.apache.pdfbox.pdmodel.graphics.color.PDDeviceRGB;
+import org.apache.pdfbox.pdmodel.graphics.color.PDIndexed;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the color space selection and the data of the encoded images.
+ *
+ * @author burgetr
+ */
+public class ImageEncoderTest
+{
+    private PDDocument doc;
+
+    @Before
+    public void setUp()
+    {
+        doc = new PDDocument();
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        doc.close();
+    }
+
+    @Test
+    public void indexedBitsPerComponent() throws IOException
+    {
+        assertIndexed(createImage(BufferedImage.TYPE_INT_RGB, 2, false), 1);
+        assertIndexed(createImage(BufferedImage.TYPE_INT_RGB, 3, false), 2);
+        assertIndexed(createImage(BufferedImage.TYPE_INT_RGB, 16, false), 4);
+        assertIndexed(createImage(BufferedImage.TYPE_INT_RGB, 17, false), 8);
+        assertIndexed(createImage(BufferedImage.TYPE_INT_RGB, 256, false), 8);
+    }
+
+    @Test
+    public void rgbWhenPaletteIsFull() throws IOException
+    {
+        final BufferedImage image = createImage(BufferedImage.TYPE_INT_RGB, 257, false);
+        final PDImageXObject ximage = ImageEncoder.createFromImage(doc, image);
+        assertTrue(ximage.getColorSpace() instanceof PDDeviceRGB);
+        assertEquals(8, ximage.getBitsPerComponent());
+        assertNull(ximage.getSoftMask());
+        assertSameRGB(image, ximage.getImage());
+    }
+
+    @Test
+    public void grayImages() throws IOException
+    {
+        // few gray levels are stored in a palette
+        assertIndexed(createImage(BufferedImage.TYPE_INT_RGB, 16, true), 4);
+        // more gray levels are stored as gray
+        final BufferedImage image = createImage(BufferedImage.TYPE_INT_RGB, 256, true);
+        final PDImageXObject ximage = ImageEncoder.createFromImage(doc, image);
+        assertTrue(ximage.getColorSpace() instanceof PDDeviceGray);
+        assertEquals(8, ximage.getBitsPerComponent());
+        assertNull(ximage.getSoftMask());
+        assertSameRGB(image, ximage.getImage());
+    }
+
+    @Test
+    public void opaqueImageWithAlphaChannel() throws IOException
+    {
+        final BufferedImage image = createImage(BufferedImage.TYPE_INT_ARGB, 2, false);
+        final PDImageXObject ximage = ImageEncoder.createFromImage(doc, image);
+        assertNull(ximage.getSoftMask());
+    }
+
+    @Test
+    public void transparentImage() throws IOException
+    {
+        final BufferedImage image = createImage(BufferedImage.TYPE_INT_ARGB, 300, false);
+        image.setRGB(1, 0, 0x80123456);
+        image.setRGB(2, 0, 0x00000000);
+        final PDImageXObject ximage = ImageEncoder.createFromImage(doc, image);
+        assertTrue(ximage.getColorSpace() instanceof PDDeviceRGB);
+        final PDImageXObject mask = ximage.getSoftMask();
+        assertNotNull(mask);
+        assertTrue(mask.getColorSpace() instanceof PDDeviceGray);
+        assertEquals(8, mask.getBitsPerComponent());
+        final BufferedImage alpha = mask.getImage();
+        assertEquals(0xff, alpha.getRGB(0, 0) & 0xff);
+        assertEquals(0x80, alpha.getRGB(1, 0) & 0xff);
+        assertEquals(0x00, alpha.getRGB(2, 0) & 0xff);
+    }
+
+    //================================================================================
+
+    private void assertIndexed(BufferedImage image, int bpc) throws IOException
+    {
+        final PDImageXObject ximage = ImageEncoder.createFromImage(doc, image);
+        assertTrue(ximage.getColorSpace() instanceof PDIndexed);
+        assertEquals(bpc, ximage.getBitsPerComponent());
+        assertNull(ximage.getSoftMask());
+        assertSameRGB(image, ximage.getImage());
+    }
+
+    /**
+     * Creates an image that uses the given number of distinct colors. The width is
+     * not a multiple of 8 so that the incomplete bytes at the row ends are used.
+     */
+    private static BufferedImage createImage(int type, int colors, boolean gray)
+    {
+        final int width = 21;
+        final int height = (colors + width - 1) / width + 2;
+        final BufferedImage ret = new BufferedImage(width, height, type);
+        for (int y = 0; y < height; y++)
+        {
+            for (int x = 0; x < width; x++)
+            {
+                final int i = (y * width + x) % colors;
+                final int rgb = gray ? i * 0x010101 : i << 8 | 0x40;
+                ret.setRGB(x, y, 0xff000000 | rgb);
+            }
+        }
+        return ret;
+    }
+
+    private static void assertSameRGB(BufferedImage expected, BufferedImage actual)
+    {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        for (int y = 0; y < expected.getHeight(); y++)
+            for (int x = 0; x < expected.getWidth(); x++)
+                assertEquals("pixel " + x + "," + y, expected.getRGB(x, y) & 0xffffff, actual.getRGB(x, y) & 0xffffff);
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * IntervalTableTest.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 19. 10. 2026, 10:12:40 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Tests of the page break interval table.
+ *
+ * @author burgetr
+ */
+public class IntervalTableTest
+{
+    private static final float EPS = 0.0001f;
+
+    @Test
+    public void insertKeepsRecordsSorted()
+    {
+        final IntervalTable table = new IntervalTable();
+        table.insert(30, 40, 35);
+        table.insert(10, 20, 15);
+        table.insert(20, 25, 22);
+        table.insert(10, 12, 11); // same start, placed after the existing record
+        assertEquals(4, table.size());
+        assertRecord(table, 0, 10, 20, 15);
+        assertRecord(table, 1, 10, 12, 11);
+        assertRecord(table, 2, 20, 25, 22);
+        assertRecord(table, 3, 30, 40, 35);
+    }
+
+    @Test
+    public void insertGrowsTable()
+    {
+        final IntervalTable table = new IntervalTable();
+        for (int i = 99; i >= 0; i--)
+            table.insert(i * 10, i * 10 + 5, i * 10 + 1);
+        assertEquals(100, table.size());
+        for (int i = 0; i < 100; i++)
+            assertRecord(table, i, i * 10, i * 10 + 5, i * 10 + 1);
+    }
+
+    @Test
+    public void removeFirstAndReuseSpace()
+    {
+        final IntervalTable table = new IntervalTable();
+        for (int i = 0; i < 8; i++)
+            table.insert(i, i + 0.5f, i);
+        for (int i = 0; i < 6; i++)
+            table.removeFirst();
+        assertEquals(2, table.size());
+        assertRecord(table, 0, 6, 6.5f, 6);
+        // the space of the removed records is reused
+        table.insert(3, 3.5f, 3);
+        table.insert(10, 10.5f, 10);
+        assertEquals(4, table.size());
+        assertRecord(table, 0, 3, 3.5f, 3);
+        assertRecord(table, 1, 6, 6.5f, 6);
+        assertRecord(table, 2, 7, 7.5f, 7);
+        assertRecord(table, 3, 10, 10.5f, 10);
+        // removing from an empty table has no effect
+        final IntervalTable empty = new IntervalTable();
+        empty.removeFirst();
+        assertEquals(0, empty.size());
+    }
+
+    @Test
+    public void moveByShiftsAllRecords()
+    {
+        final IntervalTable table = new IntervalTable();
+        table.insert(10, 20, 15);
+        table.moveBy(100);
+        table.insert(50, 60, 55); // inserted with the offset already applied
+        assertRecord(table, 0, 50, 60, 55);
+        assertRecord(table, 1, 110, 120, 115);
+        table.moveBy(-10);
+        assertRecord(table, 0, 40, 50, 45);
+        assertRecord(table, 1, 100, 110, 105);
+    }
+
+    @Test
+    public void removeLongerThan()
+    {
+        final IntervalTable table = new IntervalTable();
+        table.insert(0, 100, 50);
+        table.insert(10, 20, 15);
+        table.insert(30, 80, 40);
+        table.insert(90, 95, 92);
+        table.removeLongerThan(50);
+        assertEquals(3, table.size());
+        assertRecord(table, 0, 10, 20, 15);
+        assertRecord(table, 1, 30, 80, 40);
+        assertRecord(table, 2, 90, 95, 92);
+    }
+
+    @Test
+    public void mergeOverlapping()
+    {
+        final IntervalTable table = new IntervalTable();
+        table.insert(0, 10, 5);
+        table.insert(5, 15, 7);
+        table.insert(12, 14, 13); // contained in the merged interval
+        table.insert(20, 30, 25); // touches nothing
+        table.insert(25, 90, 60); // the merged interval would be too long
+        table.mergeOverlapping(50);
+        assertEquals(2, table.size());
+        assertRecord(table, 0, 0, 15, 5);
+        assertRecord(table, 1, 20, 30, 25);
+    }
+
+    @Test
+    public void findContaining()
+    {
+        final IntervalTable table = new IntervalTable();
+        table.insert(0, 10, 5);
+        table.insert(20, 30, 25);
+        table.insert(40, 50, 45);
+        assertEquals(0, table.findContaining(5, 0));
+        assertEquals(1, table.findContaining(29, 0));
+        assertEquals(2, table.findContaining(45, 1));
+        assertEquals(-1, table.findContaining(15, 0));
+        assertEquals(-1, table.findContaining(0, 0)); // the start is not included
+        assertEquals(-1, table.findContaining(30, 0)); // the end is not included
+        assertEquals(-1, table.findContaining(5, 1)); // before the first searched record
+        assertEquals(-1, table.findContaining(60, 0));
+        table.moveBy(5);
+        assertEquals(0, table.findContaining(14, 0));
+        assertEquals(-1, table.findContaining(16, 0));
+    }
+
+    private static void assertRecord(IntervalTable table, int i, float start, float end, float brk)
+    {
+        assertEquals(start, table.getStart(i), EPS);
+        assertEquals(end, table.getEnd(i), EPS);
+        assertEquals(brk, table.getBreak(i), EPS);
+    }
+
+}
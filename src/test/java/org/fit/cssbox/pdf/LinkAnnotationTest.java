@@ -0,0 +1,146 @@
+/*
+ * LinkAnnotationTest.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 19. 10. 2026, 21:12:36 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.interactive.action.PDActionURI;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationLink;
+import org.fit.cssbox.css.CSSNorm;
+import org.fit.cssbox.css.DOMAnalyzer;
+import org.fit.cssbox.io.DefaultDOMSource;
+import org.fit.cssbox.io.DefaultDocumentSource;
+import org.fit.cssbox.io.DocumentSource;
+import org.fit.cssbox.layout.Dimension;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+/**
+ * Tests the link annotations created for a link that is wrapped over several lines.
+ *
+ * @author burgetr
+ */
+public class LinkAnnotationTest
+{
+    private static final String HTML = "<html><body><div style=\"width: 200px\">Some text "
+            + "<a href=\"http://example.com/\">a long link wrapped over several lines of the text</a>"
+            + " and more text.</div></body></html>";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void singleAnnotationWithQuadPoints() throws Exception
+    {
+        try (PDDocument doc = PDDocument.load(render(false)))
+        {
+            final List<PDAnnotationLink> links = getLinks(doc);
+            assertEquals(1, links.size());
+            final PDAnnotationLink link = links.get(0);
+            final float[] quads = link.getQuadPoints();
+            assertTrue(quads.length > 8 && quads.length % 8 == 0);
+            // the rectangle is the union of the boxes
+            final PDRectangle rect = link.getRectangle();
+            float minY = Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+            for (int i = 0; i < quads.length; i += 2)
+            {
+                assertTrue(quads[i] >= rect.getLowerLeftX() - 0.01f && quads[i] <= rect.getUpperRightX() + 0.01f);
+                minY = Math.min(minY, quads[i + 1]);
+                maxY = Math.max(maxY, quads[i + 1]);
+            }
+            assertEquals(rect.getLowerLeftY(), minY, 0.01f);
+            assertEquals(rect.getUpperRightY(), maxY, 0.01f);
+        }
+    }
+
+    @Test
+    public void annotationPerLine() throws Exception
+    {
+        try (PDDocument doc = PDDocument.load(render(true)))
+        {
+            final List<PDAnnotationLink> links = getLinks(doc);
+            assertTrue("links: " + links.size(), links.size() > 1);
+            float lastTop = Float.MAX_VALUE;
+            for (PDAnnotationLink link : links)
+            {
+                assertNull(link.getQuadPoints());
+                assertEquals("http://example.com/", ((PDActionURI) link.getAction()).getURI());
+                // the lines follow each other from the top
+                assertTrue(link.getRectangle().getUpperRightY() < lastTop);
+                lastTop = link.getRectangle().getLowerLeftY() + 0.01f;
+            }
+        }
+    }
+
+    //================================================================================
+
+    private static List<PDAnnotationLink> getLinks(PDDocument doc) throws Exception
+    {
+        final List<PDAnnotationLink> ret = new ArrayList<>();
+        for (PDAnnotation annot : doc.getPage(0).getAnnotations())
+        {
+            if (annot instanceof PDAnnotationLink)
+                ret.add((PDAnnotationLink) annot);
+        }
+        return ret;
+    }
+
+    private byte[] render(boolean linkPerLine) throws Exception
+    {
+        final File file = folder.newFile("link.html");
+        Files.write(file.toPath(), HTML.getBytes(StandardCharsets.UTF_8));
+        try (DocumentSource src = new DefaultDocumentSource(file.toURI().toURL()))
+        {
+            final Document doc = new DefaultDOMSource(src).parse();
+            final DOMAnalyzer da = new DOMAnalyzer(doc, src.getURL());
+            da.attributesToStyles();
+            da.addStyleSheet(null, CSSNorm.stdStyleSheet(), DOMAnalyzer.Origin.AGENT);
+            da.addStyleSheet(null, CSSNorm.userStyleSheet(), DOMAnalyzer.Origin.AGENT);
+            da.getStyleSheets();
+            final PDFEngine engine = new PDFEngine("A4", da.getRoot(), da, src.getURL());
+            try
+            {
+                engine.setLinkPerLine(linkPerLine);
+                engine.createLayout(new Dimension(1200, 600));
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                engine.saveDocument(out);
+                return out.toByteArray();
+            } finally {
+                engine.closeDocument();
+            }
+        }
+    }
+
+}
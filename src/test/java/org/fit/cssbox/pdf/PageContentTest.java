@@ -0,0 +1,162 @@
+/*
+ * PageContentTest.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 19. 10. 2026, 19:40:27 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.pdfbox.contentstream.operator.Operator;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSString;
+import org.apache.pdfbox.pdfparser.PDFStreamParser;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.font.PDFont;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.util.Matrix;
+import org.junit.Test;
+
+/**
+ * Tests writing the page contents and the cached encoded strings.
+ *
+ * @author burgetr
+ */
+public class PageContentTest
+{
+    private static final PDFont FONT = PDType1Font.HELVETICA;
+
+    @Test
+    public void encodedTextIsShown() throws IOException
+    {
+        final TextEncodingCache cache = new TextEncodingCache();
+        final byte[] encoded = cache.getEncoded(FONT, "Hello (world)");
+        // the cached codes are reused
+        assertTrue(encoded == cache.getEncoded(FONT, "Hello (world)"));
+
+        try (PDDocument doc = new PDDocument())
+        {
+            final PDPage page = new PDPage();
+            doc.addPage(page);
+            try (PageContent content = PageContent.open(doc, page, false, true))
+            {
+                content.beginText();
+                content.getStream().setFont(FONT, 12);
+                content.showEncodedText(encoded);
+                content.endText();
+            }
+            // the font is registered in the page resources
+            assertTrue(page.getResources().getFontNames().iterator().hasNext());
+            try (PDDocument loaded = reload(doc))
+            {
+                final List<Object> tokens = parse(loaded.getPage(0));
+                assertEquals(operators("BT", "Tf", "Tj", "ET"), operators(tokens));
+                final COSString shown = (COSString) tokens.get(tokens.indexOf(Operator.getOperator("Tj")) - 1);
+                assertArrayEquals("Hello (world)".getBytes(StandardCharsets.US_ASCII), shown.getBytes());
+            }
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void textOutsideTextObject() throws IOException
+    {
+        try (PDDocument doc = new PDDocument())
+        {
+            final PDPage page = new PDPage();
+            doc.addPage(page);
+            final PageContent content = PageContent.open(doc, page, false, false);
+            content.showEncodedText(new TextEncodingCache().getEncoded(FONT, "text"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unencodableText() throws IOException
+    {
+        new TextEncodingCache().getEncoded(FONT, "\u4e00");
+    }
+
+    @Test
+    public void appendedContentKeepsGraphicsState() throws IOException
+    {
+        try (PDDocument doc = new PDDocument())
+        {
+            final PDPage page = new PDPage();
+            doc.addPage(page);
+            try (PageContent content = PageContent.open(doc, page, false, false))
+            {
+                content.getStream().transform(new Matrix(2, 0, 0, 2, 0, 0));
+            }
+            try (PageContent content = PageContent.open(doc, page, true, false))
+            {
+                content.getStream().addRect(0, 0, 10, 10);
+                content.getStream().fill();
+            }
+            final COSArray contents = (COSArray) page.getCOSObject().getDictionaryObject(COSName.CONTENTS);
+            assertEquals(3, contents.size());
+            // the existing content is enclosed in a saved graphics state
+            try (PDDocument loaded = reload(doc))
+            {
+                assertEquals(operators("q", "cm", "Q", "re", "f"), operators(parse(loaded.getPage(0))));
+            }
+        }
+    }
+
+    //================================================================================
+
+    private static PDDocument reload(PDDocument doc) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        doc.save(out);
+        return PDDocument.load(out.toByteArray());
+    }
+
+    private static List<Object> parse(PDPage page) throws IOException
+    {
+        final PDFStreamParser parser = new PDFStreamParser(page);
+        parser.parse();
+        return parser.getTokens();
+    }
+
+    private static List<String> operators(List<Object> tokens)
+    {
+        final List<String> ret = new ArrayList<>();
+        for (Object token : tokens)
+        {
+            if (token instanceof Operator)
+                ret.add(((Operator) token).getName());
+        }
+        return ret;
+    }
+
+    private static List<String> operators(String... names)
+    {
+        return Arrays.asList(names);
+    }
+
+}
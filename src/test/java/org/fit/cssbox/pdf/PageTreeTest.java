@@ -0,0 +1,163 @@
+/*
+ * PageTreeTest.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 19. 10. 2026, 11:14:36 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.Test;
+
+/**
+ * Tests of the balancing of the document page tree.
+ *
+ * @author burgetr
+ */
+public class PageTreeTest
+{
+
+    @Test
+    public void smallTreeIsKept() throws IOException
+    {
+        try (PDDocument doc = createDocument(PDFEngine.PAGE_TREE_FANOUT))
+        {
+            final COSDictionary root = doc.getDocumentCatalog().getPages().getCOSObject();
+            final COSArray kids = (COSArray) root.getDictionaryObject(COSName.KIDS);
+            PDFEngine.balancePageTree(doc);
+            assertSame(kids, root.getDictionaryObject(COSName.KIDS));
+            assertTree(doc, PDFEngine.PAGE_TREE_FANOUT);
+        }
+    }
+
+    @Test
+    public void twoLevels() throws IOException
+    {
+        try (PDDocument doc = createDocument(PDFEngine.PAGE_TREE_FANOUT + 1))
+        {
+            PDFEngine.balancePageTree(doc);
+            assertEquals(2, assertTree(doc, PDFEngine.PAGE_TREE_FANOUT + 1));
+        }
+    }
+
+    @Test
+    public void threeLevels() throws IOException
+    {
+        final int count = PDFEngine.PAGE_TREE_FANOUT * PDFEngine.PAGE_TREE_FANOUT + 5;
+        try (PDDocument doc = createDocument(count))
+        {
+            PDFEngine.balancePageTree(doc);
+            assertEquals(3, assertTree(doc, count));
+        }
+    }
+
+    @Test
+    public void balancedTreeIsSaved() throws IOException
+    {
+        final int count = 1000;
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PDDocument doc = createDocument(count))
+        {
+            PDFEngine.balancePageTree(doc);
+            doc.save(out);
+        }
+        try (PDDocument doc = PDDocument.load(out.toByteArray()))
+        {
+            assertEquals(count, doc.getNumberOfPages());
+            assertTree(doc, count);
+        }
+    }
+
+    //================================================================================
+
+    /**
+     * Creates a document whose pages are identified by their width.
+     */
+    private static PDDocument createDocument(int count)
+    {
+        final PDDocument ret = new PDDocument();
+        for (int i = 0; i < count; i++)
+            ret.addPage(new PDPage(new PDRectangle(i + 1, 10)));
+        return ret;
+    }
+
+    /**
+     * Checks the page tree structure and the page order.
+     * @return the tree depth
+     */
+    private static int assertTree(PDDocument doc, int count)
+    {
+        final COSDictionary root = doc.getDocumentCatalog().getPages().getCOSObject();
+        final List<COSDictionary> pages = new ArrayList<>();
+        final List<Integer> depths = new ArrayList<>();
+        assertEquals(count, checkNode(root, 0, pages, depths));
+        assertEquals(count, pages.size());
+        for (int i = 0; i < count; i++)
+        {
+            assertEquals(i + 1, new PDPage(pages.get(i)).getMediaBox().getWidth(), 0);
+            assertEquals(depths.get(0), depths.get(i));
+        }
+        int i = 0;
+        for (PDPage page : doc.getPages())
+            assertSame(pages.get(i++), page.getCOSObject());
+        assertEquals(count, i);
+        return depths.get(0);
+    }
+
+    /**
+     * Checks a page tree node and collects its pages.
+     * @return the number of pages in the node
+     */
+    private static int checkNode(COSDictionary node, int depth, List<COSDictionary> pages, List<Integer> depths)
+    {
+        if (COSName.PAGE.equals(node.getCOSName(COSName.TYPE)))
+        {
+            pages.add(node);
+            depths.add(depth);
+            return 1;
+        }
+        assertEquals(COSName.PAGES, node.getCOSName(COSName.TYPE));
+        final COSArray kids = (COSArray) node.getDictionaryObject(COSName.KIDS);
+        assertTrue(kids.size() <= PDFEngine.PAGE_TREE_FANOUT);
+        int count = 0;
+        for (int i = 0; i < kids.size(); i++)
+        {
+            final COSBase kid = kids.getObject(i);
+            assertTrue(kid instanceof COSDictionary);
+            assertSame(node, ((COSDictionary) kid).getDictionaryObject(COSName.PARENT));
+            count += checkNode((COSDictionary) kid, depth + 1, pages, depths);
+        }
+        assertEquals(count, node.getInt(COSName.COUNT));
+        return count;
+    }
+
+}
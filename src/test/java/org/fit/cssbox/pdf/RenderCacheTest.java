@@ -0,0 +1,186 @@
+/*
+ * RenderCacheTest.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 19. 10. 2026, 11:40:02 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.Consumer;
+
+import org.fit.cssbox.css.CSSNorm;
+import org.fit.cssbox.css.DOMAnalyzer;
+import org.fit.cssbox.io.DefaultDOMSource;
+import org.fit.cssbox.io.DefaultDocumentSource;
+import org.fit.cssbox.io.DocumentSource;
+import org.fit.cssbox.layout.Dimension;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+/**
+ * Tests of the document cache keys and the cache storage.
+ *
+ * @author burgetr
+ */
+public class RenderCacheTest
+{
+    private static final String HTML = "<html><head><style>p { color: red; }</style></head>"
+            + "<body><p class=\"a\">Hello</p></body></html>";
+    private static final Dimension DIM = new Dimension(800, 600);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sameInputGivesSameKey() throws Exception
+    {
+        final String key = createKey(HTML, "A4", DIM, null);
+        assertEquals(64, key.length());
+        assertEquals(key, createKey(HTML, "A4", DIM, null));
+    }
+
+    @Test
+    public void keyDependsOnInput() throws Exception
+    {
+        final String key = createKey(HTML, "A4", DIM, null);
+        assertNotEquals(key, createKey(HTML, "A5", DIM, null));
+        assertNotEquals(key, createKey(HTML, "A4", new Dimension(1024, 600), null));
+        assertNotEquals(key, createKey(HTML.replace("Hello", "Hallo"), "A4", DIM, null));
+        assertNotEquals(key, createKey(HTML.replace("class=\"a\"", "class=\"b\""), "A4", DIM, null));
+        assertNotEquals(key, createKey(HTML.replace("red", "blue"), "A4", DIM, null));
+    }
+
+    @Test
+    public void keyDependsOnOptions() throws Exception
+    {
+        final String key = createKey(HTML, "A4", DIM, null);
+        assertNotEquals(key, createKey(HTML, "A4", DIM, e -> e.setPageRange(0, 0)));
+        assertNotEquals(key, createKey(HTML, "A4", DIM, e -> e.setImageResolution(150)));
+        assertNotEquals(key, createKey(HTML, "A4", DIM, e -> e.setCompressionLevel(1)));
+        assertNotEquals(key, createKey(HTML, "A4", DIM, e -> e.setDeferredCompression(!e.isDeferredCompression())));
+        assertNotEquals(key, createKey(HTML, "A4", DIM, e -> e.setSharedResources(!e.isSharedResources())));
+        assertNotEquals(key, createKey(HTML, "A4", DIM, e -> e.setLinkPerLine(!e.isLinkPerLine())));
+        assertNotEquals(key, createKey(HTML, "A4", DIM, e -> e.getConfig().setLoadImages(!e.getConfig().getLoadImages())));
+        // the options that do not change the output
+        assertEquals(key, createKey(HTML, "A4", DIM, e -> e.setCompressionThreads(3)));
+    }
+
+    @Test
+    public void memoryCacheKeepsCopies()
+    {
+        final RenderCache cache = new RenderCache(1000);
+        final byte[] data = { 1, 2, 3 };
+        cache.put("k", data);
+        data[0] = 9;
+        final byte[] cached = cache.get("k");
+        assertArrayEquals(new byte[] { 1, 2, 3 }, cached);
+        cached[1] = 9;
+        assertArrayEquals(new byte[] { 1, 2, 3 }, cache.get("k"));
+        assertNull(cache.get("other"));
+    }
+
+    @Test
+    public void leastRecentlyUsedAreRemoved()
+    {
+        final RenderCache cache = new RenderCache(25);
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[10]);
+        cache.get("a");
+        cache.put("c", new byte[10]);
+        assertNull(cache.get("b"));
+        assertEquals(10, cache.get("a").length);
+        assertEquals(10, cache.get("c").length);
+        cache.clear();
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void directoryCache() throws IOException
+    {
+        final File dir = new File(folder.getRoot(), "cache");
+        final RenderCache cache = new RenderCache(1000, dir);
+        cache.put("k", new byte[] { 1, 2, 3 });
+        cache.clear();
+        assertArrayEquals(new byte[] { 1, 2, 3 }, cache.get("k"));
+        // another instance finds the stored document
+        assertArrayEquals(new byte[] { 1, 2, 3 }, new RenderCache(1000, dir).get("k"));
+        // documents larger than the memory limit are still stored
+        final RenderCache small = new RenderCache(1, dir);
+        small.put("big", new byte[100]);
+        assertEquals(100, small.get("big").length);
+    }
+
+    @Test
+    public void failedWriteKeepsDocument() throws IOException
+    {
+        final File dir = new File(folder.getRoot(), "cache");
+        final RenderCache cache = new RenderCache(1000, dir);
+        // the directory disappears, so the document cannot be stored there
+        Files.delete(dir.toPath());
+        cache.put("k", new byte[] { 1, 2, 3 });
+        assertArrayEquals(new byte[] { 1, 2, 3 }, cache.get("k"));
+        assertFalse(dir.exists());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidDirectory() throws IOException
+    {
+        new RenderCache(1000, new File(folder.newFile(), "cache"));
+    }
+
+    //================================================================================
+
+    private String createKey(String html, String pageFormat, Dimension dim, Consumer<PDFEngine> options) throws Exception
+    {
+        final File file = folder.newFile();
+        Files.write(file.toPath(), html.getBytes(StandardCharsets.UTF_8));
+        // the same base URL for all the documents
+        final URL url = new URL("file:/test.html");
+        try (DocumentSource src = new DefaultDocumentSource(file.toURI().toURL()))
+        {
+            final Document doc = new DefaultDOMSource(src).parse();
+            final DOMAnalyzer da = new DOMAnalyzer(doc, url);
+            da.attributesToStyles();
+            da.addStyleSheet(null, CSSNorm.stdStyleSheet(), DOMAnalyzer.Origin.AGENT);
+            da.addStyleSheet(null, CSSNorm.userStyleSheet(), DOMAnalyzer.Origin.AGENT);
+            da.getStyleSheets();
+            final PDFEngine engine = new PDFEngine(pageFormat, da.getRoot(), da, url);
+            try
+            {
+                if (options != null)
+                    options.accept(engine);
+                return RenderCache.createKey(pageFormat, da.getRoot(), da, dim, url, engine);
+            } finally {
+                engine.closeDocument();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * RenderTreeTest.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 19. 10. 2026, 15:02:44 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the tree structure and the cached subtree extents of the render tree.
+ *
+ * @author burgetr
+ */
+public class RenderTreeTest
+{
+    private RenderTree tree;
+    private int root;
+
+    @Before
+    public void setUp()
+    {
+        tree = new RenderTree();
+        root = elem(0, 1000);
+        tree.setRoot(root);
+    }
+
+    @Test
+    public void nodesOutsideTree()
+    {
+        final int child = text(10, 10);
+        assertFalse(tree.isInTree(child));
+        tree.insert(root, child);
+        assertTrue(tree.isInTree(child));
+        assertTrue(tree.isInTree(root));
+        assertEquals(root, tree.getParent(child));
+    }
+
+    @Test
+    public void childrenAreSortedWhenRead()
+    {
+        final int c30 = text(30, 5);
+        final int c10a = text(10, 5);
+        final int c20 = text(20, 5);
+        final int c10b = text(10, 5);
+        for (int child : new int[] { c30, c10a, c20, c10b })
+            tree.insert(root, child);
+        // the children with equal coordinates keep the insertion order
+        assertEquals(Arrays.asList(c10a, c10b, c20, c30), children(root));
+        // an appended child is placed at the right position again
+        final int c15 = text(15, 5);
+        tree.insert(root, c15);
+        assertEquals(Arrays.asList(c10a, c10b, c15, c20, c30), children(root));
+    }
+
+    @Test
+    public void extentsPreferNonElementDescendants()
+    {
+        final int block = elem(10, 200);
+        tree.insert(root, block);
+        assertEquals(10, tree.getFirstTop(root, 1), 0);
+        assertEquals(210, tree.getLastBottom(root, 1), 0);
+        final int line = text(20, 15);
+        tree.insert(block, line);
+        assertEquals(20, tree.getFirstTop(root, 1), 0);
+        assertEquals(35, tree.getLastBottom(root, 1), 0);
+        assertEquals(20, tree.getFirstTop(block, 1), 0);
+    }
+
+    @Test
+    public void firstChildInvalidatesAncestors()
+    {
+        final int outer = elem(10, 500);
+        final int inner = elem(20, 400);
+        tree.insert(root, outer);
+        tree.insert(outer, inner);
+        final int first = text(30, 10);
+        tree.insert(inner, first);
+        assertEquals(40, tree.getLastBottom(root, 1), 0);
+        // a leaf gets its first child while the ancestors have valid extents
+        tree.insert(first, text(50, 10));
+        assertEquals(60, tree.getLastBottom(root, 1), 0);
+        final int span = elem(70, 10);
+        tree.insert(inner, span);
+        tree.insert(span, text(300, 10));
+        assertEquals(310, tree.getLastBottom(root, 1), 0);
+        assertEquals(310, tree.getLastBottom(outer, 1), 0);
+    }
+
+    @Test
+    public void offsetsInvalidateAncestors()
+    {
+        final int block = elem(10, 200);
+        tree.insert(root, block);
+        final int line = text(20, 15);
+        tree.insert(block, line);
+        assertEquals(35, tree.getLastBottom(root, 1), 0);
+        tree.addPlusOffset(line, 100);
+        assertEquals(120, tree.getFirstTop(root, 1), 0);
+        assertEquals(135, tree.getLastBottom(root, 1), 0);
+        tree.addPlusHeight(line, 5);
+        assertEquals(140, tree.getLastBottom(root, 1), 0);
+        // the resolution coefficient scales the coordinates but not the offsets
+        assertEquals(2 * 20 + 100, tree.getTop(line, 2), 0);
+    }
+
+    @Test
+    public void clearRemovesNodes()
+    {
+        tree.insert(root, text(10, 10));
+        tree.clear();
+        assertEquals(0, tree.size());
+        assertEquals(RenderTree.NONE, tree.getRoot());
+        final int node = elem(5, 5);
+        assertEquals(0, node);
+        assertFalse(tree.hasChildren(node));
+    }
+
+    //================================================================================
+
+    private int elem(float y, float height)
+    {
+        return tree.add(null, RenderTree.TYPE_ELEM, 0, y, 100, height);
+    }
+
+    private int text(float y, float height)
+    {
+        return tree.add(null, RenderTree.TYPE_TEXT, 0, y, 100, height);
+    }
+
+    private List<Integer> children(int node)
+    {
+        final List<Integer> ret = new ArrayList<>();
+        for (int child = tree.getFirstChild(node); child != RenderTree.NONE; child = tree.getNextSibling(child))
+            ret.add(child);
+        return ret;
+    }
+
+}
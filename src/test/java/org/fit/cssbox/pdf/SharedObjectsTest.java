@@ -0,0 +1,148 @@
+/*
+ * SharedObjectsTest.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 19. 10. 2026, 12:48:55 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSObject;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotation;
+import org.apache.pdfbox.pdmodel.interactive.annotation.PDAnnotationLink;
+import org.fit.cssbox.css.CSSNorm;
+import org.fit.cssbox.css.DOMAnalyzer;
+import org.fit.cssbox.io.DefaultDOMSource;
+import org.fit.cssbox.io.DefaultDocumentSource;
+import org.fit.cssbox.io.DocumentSource;
+import org.fit.cssbox.layout.Dimension;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Document;
+
+/**
+ * Tests that the graphics states and the link dictionaries are not written as separate
+ * objects for each use. The test document is a long table with colored text and links.
+ *
+ * @author burgetr
+ */
+public class SharedObjectsTest
+{
+    private static final int ROWS = 300;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void graphicsStatesAndLinksAreShared() throws Exception
+    {
+        final byte[] pdf = render(createTable());
+        try (PDDocument doc = PDDocument.load(pdf))
+        {
+            assertTrue(doc.getNumberOfPages() > 1);
+            final Set<COSBase> states = Collections.newSetFromMap(new IdentityHashMap<>());
+            int links = 0;
+            for (PDPage page : doc.getPages())
+            {
+                final COSDictionary resources = page.getCOSObject().getCOSDictionary(COSName.RESOURCES);
+                final COSDictionary gstates = resources.getCOSDictionary(COSName.EXT_G_STATE);
+                if (gstates != null)
+                {
+                    for (COSName name : gstates.keySet())
+                        states.add(gstates.getDictionaryObject(name));
+                }
+                for (PDAnnotation annot : page.getAnnotations())
+                {
+                    if (annot instanceof PDAnnotationLink)
+                    {
+                        final COSDictionary dict = annot.getCOSObject();
+                        // the action and border style are stored in the annotation
+                        assertFalse(dict.getItem(COSName.A) instanceof COSObject);
+                        links++;
+                    }
+                }
+            }
+            assertEquals(ROWS, links);
+            // one state for stroking and one for non-stroking opaque colors
+            assertTrue("graphics states: " + states.size(), states.size() <= 2);
+            // the annotations and about the pages, their contents, the fonts and the document structures
+            final int objects = doc.getDocument().getXrefTable().size();
+            assertTrue("objects: " + objects + " pages: " + doc.getNumberOfPages(), objects - links < doc.getNumberOfPages() * 3 + 50);
+        }
+    }
+
+    //================================================================================
+
+    private static String createTable()
+    {
+        final StringBuilder ret = new StringBuilder();
+        ret.append("<html><head><style>td { border: 1px solid #888; padding: 4px; }</style></head><body>");
+        ret.append("<table style=\"border-collapse: collapse; width: 100%\">");
+        final String[] colors = { "black", "red", "green", "blue" };
+        for (int i = 0; i < ROWS; i++)
+        {
+            ret.append("<tr><td style=\"color: ").append(colors[i % colors.length]).append("\">Item ").append(i)
+                    .append("</td><td><a href=\"http://example.com/item/").append(i).append("\">Details</a></td>")
+                    .append("<td style=\"text-align: right\">").append(i * 3.5f).append("</td></tr>");
+        }
+        ret.append("</table></body></html>");
+        return ret.toString();
+    }
+
+    private byte[] render(String html) throws Exception
+    {
+        final File file = folder.newFile("table.html");
+        Files.write(file.toPath(), html.getBytes(StandardCharsets.UTF_8));
+        try (DocumentSource src = new DefaultDocumentSource(file.toURI().toURL()))
+        {
+            final Document doc = new DefaultDOMSource(src).parse();
+            final DOMAnalyzer da = new DOMAnalyzer(doc, src.getURL());
+            da.attributesToStyles();
+            da.addStyleSheet(null, CSSNorm.stdStyleSheet(), DOMAnalyzer.Origin.AGENT);
+            da.addStyleSheet(null, CSSNorm.userStyleSheet(), DOMAnalyzer.Origin.AGENT);
+            da.getStyleSheets();
+            final PDFEngine engine = new PDFEngine("A4", da.getRoot(), da, src.getURL());
+            try
+            {
+                engine.createLayout(new Dimension(1200, 600));
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                engine.saveDocument(out);
+                return out.toByteArray();
+            } finally {
+                engine.closeDocument();
+            }
+        }
+    }
+
+}
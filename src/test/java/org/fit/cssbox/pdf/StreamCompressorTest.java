@@ -0,0 +1,203 @@
+/*
+ * StreamCompressorTest.java
+ * Copyright (c) 2026 Radek Burget
+ *
+ * CSSBox is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * CSSBox is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with CSSBox. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Created on 19. 10. 2026, 10:52:17 by burgetr
+ */
+
+package org.fit.cssbox.pdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.pattern.PDTilingPattern;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests of the concurrent compression of the page content streams.
+ *
+ * @author burgetr
+ */
+public class StreamCompressorTest
+{
+    private static final int PAGES = 50;
+
+    private PDDocument doc;
+    private List<byte[]> contents;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        doc = new PDDocument();
+        contents = new ArrayList<>();
+        for (int i = 0; i < PAGES; i++)
+        {
+            final PDPage page = new PDPage();
+            final COSStream stream = doc.getDocument().createCOSStream();
+            final byte[] data = createContent(i);
+            writeRaw(stream, data);
+            page.getCOSObject().setItem(COSName.CONTENTS, stream);
+            doc.addPage(page);
+            contents.add(data);
+        }
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        doc.close();
+    }
+
+    @Test
+    public void compressInCallingThread() throws IOException
+    {
+        new StreamCompressor(Deflater.BEST_SPEED, 1).compress(doc);
+        assertCompressed();
+    }
+
+    @Test
+    public void compressWithOwnThreads() throws IOException
+    {
+        new StreamCompressor(Deflater.BEST_COMPRESSION, 4).compress(doc);
+        assertCompressed();
+    }
+
+    @Test
+    public void compressWithSharedExecutor() throws IOException
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try
+        {
+            new StreamCompressor(Deflater.DEFAULT_COMPRESSION, executor).compress(doc);
+            assertCompressed();
+            // the executor is still usable
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void compressedStreamsAreKept() throws IOException
+    {
+        final StreamCompressor compressor = new StreamCompressor(Deflater.BEST_SPEED, 2);
+        compressor.compress(doc);
+        final List<byte[]> raw = new ArrayList<>();
+        for (PDPage page : doc.getPages())
+            raw.add(readRaw(getContentStream(page)));
+        compressor.compress(doc);
+        int i = 0;
+        for (PDPage page : doc.getPages())
+            assertArrayEquals(raw.get(i++), readRaw(getContentStream(page)));
+        assertCompressed();
+    }
+
+    @Test
+    public void compressSharedStreamsOnce() throws IOException
+    {
+        // all the pages share the resources with a tiling pattern and two pages share the contents
+        final PDResources resources = new PDResources();
+        final PDTilingPattern pattern = new PDTilingPattern();
+        pattern.setBBox(new PDRectangle(10, 10));
+        pattern.setXStep(10);
+        pattern.setYStep(10);
+        final byte[] patternData = "0 0 5 5 re f\n".getBytes(StandardCharsets.US_ASCII);
+        writeRaw((COSStream) pattern.getCOSObject(), patternData);
+        resources.add(pattern);
+        for (PDPage page : doc.getPages())
+            page.setResources(resources);
+        doc.getPage(1).getCOSObject().setItem(COSName.CONTENTS, getContentStream(doc.getPage(0)));
+        contents.set(1, contents.get(0));
+
+        new StreamCompressor(Deflater.BEST_SPEED, 4).compress(doc);
+        assertCompressed();
+        final COSStream patternStream = (COSStream) pattern.getCOSObject();
+        assertEquals(COSName.FLATE_DECODE, patternStream.getFilters());
+        assertArrayEquals(patternData, readDecoded(patternStream));
+    }
+
+    //================================================================================
+
+    private void assertCompressed() throws IOException
+    {
+        int i = 0;
+        for (PDPage page : doc.getPages())
+        {
+            final COSStream stream = getContentStream(page);
+            assertEquals(COSName.FLATE_DECODE, stream.getFilters());
+            assertArrayEquals("page " + i, contents.get(i), readDecoded(stream));
+            i++;
+        }
+    }
+
+    private static byte[] createContent(int pageIndex)
+    {
+        final StringBuilder ret = new StringBuilder();
+        for (int i = 0; i < 200 + pageIndex * 10; i++)
+            ret.append(i).append(' ').append(pageIndex).append(" 10 10 re f\n");
+        return ret.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static COSStream getContentStream(PDPage page)
+    {
+        return (COSStream) page.getCOSObject().getDictionaryObject(COSName.CONTENTS);
+    }
+
+    private static void writeRaw(COSStream stream, byte[] data) throws IOException
+    {
+        try (OutputStream out = stream.createRawOutputStream())
+        {
+            out.write(data);
+        }
+    }
+
+    private static byte[] readRaw(COSStream stream) throws IOException
+    {
+        try (InputStream in = stream.createRawInputStream())
+        {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    private static byte[] readDecoded(COSStream stream) throws IOException
+    {
+        try (InputStream in = stream.createInputStream())
+        {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+}